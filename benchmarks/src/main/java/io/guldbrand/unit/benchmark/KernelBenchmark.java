@@ -0,0 +1,84 @@
+package io.guldbrand.unit.benchmark;
+
+import io.guldbrand.unit.U;
+import io.guldbrand.unit.UVArray;
+import io.guldbrand.unit.UnitMismatchException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the column-wide operations of UVArray, with and without the Vector API.
+ * <p>
+ * The Vector API is only used on Java 17 and later, from the multi-release jar, when the jdk.incubator.vector module is added:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar KernelBenchmark -jvmArgsAppend --add-modules=jdk.incubator.vector
+ * </pre>
+ * vector=false runs the scalar loops in the same JVM, by setting the system property io.guldbrand.unit.vector to false
+ * before the library is loaded. Every parameter combination runs in its own fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+	@Param({"true", "false"})
+	public String vector;
+
+	@Param({"1000", "1000000"})
+	public int size;
+
+	private UVArray meters;
+	private UVArray feet;
+	private UVArray celsius;
+
+	@Setup
+	public void setup() {
+		System.setProperty("io.guldbrand.unit.vector", vector); // Read once, when the loops are first used
+		Random random = new Random(1);
+		double[] a = new double[size];
+		double[] b = new double[size];
+		for (int i = 0; i < size; i++) {
+			a[i] = random.nextDouble() * 1000;
+			b[i] = random.nextDouble() * 1000 + 1;
+		}
+		meters = new UVArray(a, U.M);
+		feet = new UVArray(b, U.FOOT);
+		celsius = new UVArray(a.clone(), U.CELSIUS);
+	}
+
+	@Benchmark
+	public UVArray convert() throws UnitMismatchException {
+		return meters.convert(U.KM);
+	}
+
+	@Benchmark
+	public UVArray convertAbsolute() throws UnitMismatchException {
+		return celsius.convertAbsolute(U.FAHRENHEIT);
+	}
+
+	@Benchmark
+	public UVArray add() throws UnitMismatchException {
+		return meters.add(feet);
+	}
+
+	@Benchmark
+	public UVArray mul() {
+		return meters.mul(feet);
+	}
+
+}
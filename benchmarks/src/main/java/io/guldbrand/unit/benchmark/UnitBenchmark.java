@@ -0,0 +1,132 @@
+package io.guldbrand.unit.benchmark;
+
+import io.guldbrand.unit.ConversionMatrix;
+import io.guldbrand.unit.Formula;
+import io.guldbrand.unit.U;
+import io.guldbrand.unit.UV;
+import io.guldbrand.unit.UVFormat;
+import io.guldbrand.unit.UnitMismatchException;
+import io.guldbrand.unit.UnitRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Throughput of the core operations of U and UV.
+ * <p>
+ * Every benchmark runs on units of three levels of complexity:
+ * base units (km and m), derived units (N and kg * m / s^2) and custom compound units (carl and m / kg).
+ * Run with -prof gc to see the allocations per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitBenchmark {
+
+	@Param({"base", "derived", "compound"})
+	public String complexity;
+
+	private U unit; // The unit of a
+	private U other; // A different unit of the same quantity
+	private UV a;
+	private UV b;
+	private U unreduced; // unit * other, such as (km*m), which reduce() turns into km^2
+	private DoubleBinaryOperator product; // a * b as a compiled formula
+	private final StringBuilder sb = new StringBuilder(); // Reused by uvFormat
+	private final ConversionMatrix matrix = UnitRegistry.DEFAULT.conversions();
+
+	@Setup
+	public void setup() {
+		switch (complexity) {
+			case "base":
+				unit = U.KM;
+				other = U.M;
+				break;
+			case "derived":
+				unit = U.N;
+				other = U.KG.mul(U.M).div(U.S.pow(2));
+				break;
+			case "compound":
+				unit = new U(U.M.div(U.KG), 0.025, "carl", "carl");
+				other = U.M.div(U.KG);
+				break;
+			default:
+				throw new IllegalArgumentException(complexity);
+		}
+		a = new UV(3.5, unit);
+		b = new UV(1250, other);
+		product = Formula.var(0, unit).mul(Formula.var(1, other)).toBinaryOperator();
+		unreduced = unit.mul(other);
+	}
+
+	@Benchmark
+	public UV convert() throws UnitMismatchException {
+		return a.convert(other);
+	}
+
+	@Benchmark
+	public double convertMatrix() throws UnitMismatchException {
+		return a.value() * matrix.factor(unit, other); // Units made with mul and div are not registered and fall back to the cache
+	}
+
+	@Benchmark
+	public UV add() throws UnitMismatchException {
+		return a.add(b);
+	}
+
+	@Benchmark
+	public UV mul() {
+		return a.mul(b);
+	}
+
+	@Benchmark
+	public double mulFormula() {
+		return product.applyAsDouble(a.value(), b.value());
+	}
+
+	@Benchmark
+	public UV pow() {
+		return a.pow(2);
+	}
+
+	@Benchmark
+	public U reduce() {
+		return unreduced.reduce();
+	}
+
+	@Benchmark
+	public boolean isSameQuantity() {
+		return unit.isSameQuantity(other);
+	}
+
+	@Benchmark
+	public U getBestUnit() {
+		return U.getBestUnit(b, 1);
+	}
+
+	@Benchmark
+	public String uvToString() {
+		return a.toString();
+	}
+
+	@Benchmark
+	public StringBuilder uvFormat() {
+		sb.setLength(0);
+		return UVFormat.DEFAULT.format(a, sb);
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.guldbrand.unit;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, thread-safe memo of unit arithmetic.
+ * <p>
+ * Results of {@link U#mul(U)}, {@link U#div(U)}, {@link U#pow(double)} and of multiplying two unit values are stored
+ * keyed by the identity of their operands and the exponent. Since units are immutable, a stored result is valid forever.
+ * When the table is full, arbitrary entries are evicted to make room for new ones.
+ */
+final class AlgebraTable {
+
+	static final int MUL = 0;
+	static final int DIV = 1;
+	static final int POW = 2;
+	static final int PRODUCT = 3;
+
+	private final int maxSize;
+	private final ConcurrentHashMap<Key, Object> results;
+
+	AlgebraTable(int maxSize) {
+		this.maxSize = maxSize;
+		this.results = new ConcurrentHashMap<Key, Object>(64);
+	}
+
+	/**
+	 * Looks up a stored result.
+	 *
+	 * @param op one of MUL, DIV, POW or PRODUCT.
+	 * @param a the first operand.
+	 * @param b the second operand, or null for POW.
+	 * @param p the exponent for POW, otherwise 0.
+	 * @return the stored result or null.
+	 */
+	Object get(int op, U a, U b, double p) {
+		return results.get(new Key(op, a, b, p));
+	}
+
+	/**
+	 * Stores a result unless another thread already did.
+	 *
+	 * @return the stored result, which is the given one unless another thread stored one first.
+	 */
+	Object put(int op, U a, U b, double p, Object result) {
+		Key key = new Key(op, a, b, p);
+		Iterator<Key> it = results.keySet().iterator();
+		while (results.size() >= maxSize && it.hasNext()) {
+			results.remove(it.next());
+		}
+		Object existing = results.putIfAbsent(key, result);
+		return existing == null ? result : existing;
+	}
+
+	int size() {
+		return results.size();
+	}
+
+	/** The result of multiplying two unit values: value = a.value * b.value * factor, expressed in unit. */
+	static final class Product {
+		final U unit;
+		final double factor;
+
+		Product(U unit, double factor) {
+			this.unit = unit;
+			this.factor = factor;
+		}
+	}
+
+	/** An operation and its operands, compared by identity. */
+	private static final class Key {
+		private final int op;
+		private final U a;
+		private final U b;
+		private final double p;
+
+		Key(int op, U a, U b, double p) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+			this.p = p;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key k = (Key) obj;
+			return op == k.op && a == k.a && b == k.b && Double.compare(p, k.p) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = 31 * op + System.identityHashCode(a);
+			h = 31 * h + System.identityHashCode(b);
+			return 31 * h + Double.hashCode(p);
+		}
+	}
+
+}
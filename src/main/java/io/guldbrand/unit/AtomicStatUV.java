@@ -0,0 +1,186 @@
+package io.guldbrand.unit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe bounded value, such as a quota of bytes or a tank of liters shared by several threads.
+ * <p>
+ * Like {@link StatUV}, the value is kept between a min and a max, and adding returns the amount that was actually added.
+ * The value is stored in base units (the unit's length times the value) as the bits of a double in an {@link AtomicLong},
+ * and updated with compare-and-set, so no thread ever locks and no unit value is converted on the way.
+ * Adding a value of another unit of the same quantity costs one multiplication.
+ * <p>
+ * Ex: new AtomicStatUV(99, U.L, 0, 100).add(1500, U.ML) adds 1 L and returns 1000 ml.
+ */
+public class AtomicStatUV {
+
+	private final U unit;
+	private final AtomicLong value; // Double bits, in base units
+	private volatile double min; // In base units
+	private volatile double max; // In base units
+
+	/**
+	 * Creates a bounded value.
+	 *
+	 * @param value the initial value. It is clamped to [min, max].
+	 * @param unit the unit of value, min and max, and of {@link #getUV()}.
+	 * @param min the smallest value allowed.
+	 * @param max the largest value allowed.
+	 */
+	public AtomicStatUV(double value, U unit, double min, double max) {
+		if (min > max) throw new IllegalArgumentException(String.format("Min %s is greater than max %s.", min, max));
+		this.unit = unit;
+		this.min = min * unit.getLength();
+		this.max = max * unit.getLength();
+		this.value = new AtomicLong(Double.doubleToRawLongBits(clamp(value * unit.getLength())));
+	}
+
+	/**
+	 * Creates an unbounded value.
+	 *
+	 * @param value the initial value.
+	 * @param unit the unit of the value.
+	 */
+	public AtomicStatUV(double value, U unit) {
+		this(value, unit, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Adds to the value, as much as the max and min allow.
+	 *
+	 * @param value the amount to add. May be negative.
+	 * @param u the unit of the amount.
+	 * @return the amount that was actually added, in the unit u. This will differ from the given value only if the max or min is reached.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this value.
+	 */
+	public UV add(double value, U u) throws UnitMismatchException {
+		return new UV(addBase(base(value, u)) / u.getLength(), u);
+	}
+
+	/** Like {@link #add(double, U)} but the amount is specified as a unit value. */
+	public UV add(UV uv) throws UnitMismatchException {
+		return add(uv.value(), uv.unit());
+	}
+
+	/** Like {@link #add(double, U)} but subtracts. Returns the amount that was actually subtracted. */
+	public UV sub(double value, U u) throws UnitMismatchException {
+		return add(-value, u).negate();
+	}
+
+	/** Like {@link #sub(double, U)} but the amount is specified as a unit value. */
+	public UV sub(UV uv) throws UnitMismatchException {
+		return sub(uv.value(), uv.unit());
+	}
+
+	/**
+	 * Adds to the value only if the result stays within min and max. Use this to reserve a quota all or nothing.
+	 *
+	 * @param value the amount to add. May be negative.
+	 * @param u the unit of the amount.
+	 * @return true iff the amount was added.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this value.
+	 */
+	public boolean tryAdd(double value, U u) throws UnitMismatchException {
+		double amount = base(value, u);
+		while (true) {
+			long bits = this.value.get();
+			double current = Double.longBitsToDouble(bits);
+			double next = current + amount;
+			if (next > max || next < min) return false;
+			if (this.value.compareAndSet(bits, Double.doubleToRawLongBits(next))) return true;
+		}
+	}
+
+	/** Like {@link #tryAdd(double, U)} but the amount is specified as a unit value. */
+	public boolean tryAdd(UV uv) throws UnitMismatchException {
+		return tryAdd(uv.value(), uv.unit());
+	}
+
+	/** Adds an amount in base units with clamping. Returns the amount added, in base units. */
+	private double addBase(double amount) {
+		while (true) {
+			long bits = value.get();
+			double current = Double.longBitsToDouble(bits);
+			double next = clamp(current + amount);
+			if (next == current || value.compareAndSet(bits, Double.doubleToRawLongBits(next))) return next - current;
+		}
+	}
+
+	/** Converts an amount to base units. */
+	private double base(double value, U u) throws UnitMismatchException {
+		if (!unit.isSameQuantity(u)) throw U.mismatch(u, unit);
+		return value * u.getLength();
+	}
+
+	private double clamp(double value) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Sets the value, clamped to min and max.
+	 *
+	 * @param uv the new value.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this value.
+	 */
+	public void setUV(UV uv) throws UnitMismatchException {
+		value.set(Double.doubleToRawLongBits(clamp(base(uv.value(), uv.unit()))));
+	}
+
+	/**
+	 * Returns the current value.
+	 * @return the current value, in the unit of this value.
+	 */
+	public UV getUV() {
+		return new UV(Double.longBitsToDouble(value.get()) / unit.getLength(), unit);
+	}
+
+	/**
+	 * Returns the unit of this value.
+	 * @return the unit of this value.
+	 */
+	public U getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the smallest value allowed.
+	 * @return the min, in the unit of this value.
+	 */
+	public UV getMin() {
+		return new UV(min / unit.getLength(), unit);
+	}
+
+	/**
+	 * Returns the largest value allowed.
+	 * @return the max, in the unit of this value.
+	 */
+	public UV getMax() {
+		return new UV(max / unit.getLength(), unit);
+	}
+
+	/**
+	 * Changes the smallest value allowed. A current value below the new min is raised to it by the next add.
+	 *
+	 * @param min the new min.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this value.
+	 */
+	public void setMin(UV min) throws UnitMismatchException {
+		this.min = base(min.value(), min.unit());
+	}
+
+	/**
+	 * Changes the largest value allowed. A current value above the new max is lowered to it by the next add.
+	 *
+	 * @param max the new max.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this value.
+	 */
+	public void setMax(UV max) throws UnitMismatchException {
+		this.max = base(max.value(), max.unit());
+	}
+
+	@Override
+	public String toString() {
+		return getUV().toString();
+	}
+
+}
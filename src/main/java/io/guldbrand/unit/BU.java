@@ -19,6 +19,7 @@ class BU { // Base Unit
 	
 	private final double length;
 	private final Quantity quantity;
+	private final double scaledLength; // length^(power/defPower), the length of this unit including its power.
 
 	private final double defPower; // Definition power. Ex: Litres is Distance^3 but does not itself have a power. Thus its defPower = 3.
 	private final double offset; // The absolute offset. Only used for absolute conversion. All units of same quantity needs to offset to the same point.
@@ -31,6 +32,7 @@ class BU { // Base Unit
 		this.quantity = quantity;
 		this.defPower = defPower;
 		this.offset = offset;
+		this.scaledLength = Math.pow(length, quantity.getPower() / defPower);
 		
 		this.shortName = shortName;
 		this.longName = longName;
@@ -96,6 +98,24 @@ class BU { // Base Unit
 		return false;
 	}
 	
+	/** Checks whether this and another base unit have identical fields. Used for interning compound units.
+	 *
+	 * @param bu the base unit to compare with
+	 * @return true iff every field of the base units is equal */
+	boolean isSameStructure(BU bu) {
+		return Double.compare(length, bu.length) == 0 && quantity.equals(bu.quantity)
+				  && Double.compare(defPower, bu.defPower) == 0 && Double.compare(offset, bu.offset) == 0
+				  && shortName.equals(bu.shortName) && longName.equals(bu.longName);
+	}
+
+	/** @return a hash consistent with {@link #isSameStructure(BU)}. */
+	int structureHash() {
+		int h = quantity.hashCode();
+		h = 31 * h + Double.hashCode(length);
+		h = 31 * h + Double.hashCode(defPower);
+		return 31 * h + shortName.hashCode();
+	}
+	
 	/** Perform repeated multiplication of this unit with itself.
 	 *
 	 * @param p exponent. If 0: result is NONE.
@@ -131,9 +151,24 @@ class BU { // Base Unit
 	}
 	
 	public double getLength() {
-		return Math.pow(length, getPower() / getDefPower());
+		return scaledLength;
 	}
 	
+	/** @return the length of this unit as defined, without its power. */
+	double getDefinitionLength() {
+		return length;
+	}
+
+	/** @return the short name of this unit as defined, without its power. */
+	String getShortName() {
+		return shortName;
+	}
+
+	/** @return the long name of this unit as defined, without its power. */
+	String getLongName() {
+		return longName;
+	}
+
 	public double getPower() {
 		return quantity.getPower();
 	}
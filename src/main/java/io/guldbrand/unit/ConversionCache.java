@@ -0,0 +1,160 @@
+package io.guldbrand.unit;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of {@link Converter}s keyed by pairs of units.
+ * <p>
+ * {@link UV#convert(U)} looks up its converter here, so converting between a unit pair that has been seen before
+ * skips the quantity check and the length calculations.
+ * <p>
+ * Units are keyed by identity. Two units may be equal (same quantity and length) while having different names or offsets,
+ * and a cached converter has to return exactly the unit that was asked for.
+ * When the cache is full, arbitrary entries are evicted to make room for new ones.
+ */
+public final class ConversionCache {
+
+	/** The number of unit pairs the default cache holds. */
+	public static final int DEFAULT_SIZE = 4096;
+
+	/** The cache used by {@link UV#convert(U)}. */
+	public static final ConversionCache DEFAULT = new ConversionCache(DEFAULT_SIZE);
+
+	private final int maxSize;
+	private final ConcurrentHashMap<Key, Converter> converters;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maxSize the maximum number of unit pairs to hold.
+	 */
+	public ConversionCache(int maxSize) {
+		if (maxSize < 1) throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+		this.maxSize = maxSize;
+		this.converters = new ConcurrentHashMap<Key, Converter>(Math.min(maxSize, 64));
+	}
+
+	/**
+	 * Returns a converter between two units, creating and caching it if needed.
+	 *
+	 * @param from the unit to convert from.
+	 * @param to the unit to convert to.
+	 * @return a converter from one unit to the other.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 */
+	public Converter get(U from, U to) throws UnitMismatchException {
+		Converter c = find(from, to);
+		if (c == null) throw U.mismatch(from, to);
+		return c;
+	}
+
+	/**
+	 * Like {@link #get(U, U)}, but returns null instead of throwing if the units are not of the same quantity.
+	 * Nothing is allocated for a mismatch, so this is the cheaper choice where mismatches are expected.
+	 *
+	 * @param from the unit to convert from.
+	 * @param to the unit to convert to.
+	 * @return a converter from one unit to the other, or null if the units are not of the same quantity.
+	 */
+	public Converter find(U from, U to) {
+		Key key = new Key(from, to);
+		Converter c = converters.get(key);
+		if (c != null) {
+			hits.increment();
+			return c;
+		}
+		misses.increment();
+		if (!from.isSameQuantity(to)) return null;
+		c = new Converter(from, to);
+		evictIfFull();
+		converters.put(key, c);
+		return c;
+	}
+
+	private void evictIfFull() {
+		Iterator<Key> it = converters.keySet().iterator();
+		while (converters.size() >= maxSize && it.hasNext()) {
+			if (converters.remove(it.next()) != null) evictions.increment();
+		}
+	}
+
+	/** Removes all cached converters. Counters are not reset. */
+	public void clear() {
+		converters.clear();
+	}
+
+	/**
+	 * Returns the number of cached unit pairs.
+	 * @return the number of cached unit pairs.
+	 */
+	public int size() {
+		return converters.size();
+	}
+
+	/**
+	 * Returns the maximum number of unit pairs this cache holds.
+	 * @return the maximum number of unit pairs this cache holds.
+	 */
+	public int maxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached converter.
+	 * @return the number of cache hits.
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that had to create a converter. Lookups of mismatching units are included.
+	 * @return the number of cache misses.
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of converters removed to make room for new ones.
+	 * @return the number of evictions.
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConversionCache[size: %d/%d, hits: %d, misses: %d, evictions: %d]", size(), maxSize, hits(), misses(), evictions());
+	}
+
+	/** A pair of units, compared by identity. */
+	private static final class Key {
+		private final U from;
+		private final U to;
+
+		Key(U from, U to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key k = (Key) obj;
+			return from == k.from && to == k.to;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(from) + System.identityHashCode(to);
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package io.guldbrand.unit;
+
+import java.util.Arrays;
+
+/**
+ * Dense table of conversion factors between all units of a {@link UnitRegistry}, addressed by small integer ids.
+ * <p>
+ * Every registered unit gets an id, its position in registration order. The factor from unit i to unit j is stored in
+ * a table, so converting between registered units is a single table lookup: values[k] * factor(i, j). Factors between
+ * units of different quantities are NaN. The factors are the same as those of {@link Converter#factor()}, bit for bit.
+ * <p>
+ * Units that are not registered, such as compound units created with {@link U#mul(U)} or {@link U#div(U)}, have no id.
+ * The methods that take units fall back to {@link ConversionCache#DEFAULT} for them.
+ * <p>
+ * The table is created the first time {@link UnitRegistry#conversions()} is called, and from then on it is updated
+ * incrementally when a unit is registered: a row and a column are added, in time proportional to the number of units.
+ * It uses 8 * n^2 bytes for n units, so it is only kept for registries that ask for it. Reads never lock and see either
+ * the table before or after a registration.
+ * <p>
+ * Ex: ConversionMatrix m = UnitRegistry.DEFAULT.conversions(); double f = m.factor(m.id(U.KM), m.id(U.MILE));
+ */
+public final class ConversionMatrix {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private volatile State state = new State(new double[0][], new U[0], new Entry[2 * INITIAL_CAPACITY], 0);
+
+	/** Creates an empty table. Called by {@link UnitRegistry}. */
+	ConversionMatrix() {
+	}
+
+	/**
+	 * The units and factors visible to readers. Rows, columns and ids at or beyond size may be written by a registration
+	 * in progress, so they are never read. Everything below size is never written again.
+	 */
+	private static final class State {
+		final double[][] factors; // factors[from][to], capacity x capacity
+		final U[] units; // By id, capacity long
+		final Entry[] ids; // Open addressing by identity, at most half full. Slots are only ever filled, with complete entries.
+		final int size;
+
+		State(double[][] factors, U[] units, Entry[] ids, int size) {
+			this.factors = factors;
+			this.units = units;
+			this.ids = ids;
+			this.size = size;
+		}
+	}
+
+	/** A unit and its id. Immutable, so a reader that sees an entry sees both fields. */
+	private static final class Entry {
+		final U unit;
+		final int id;
+
+		Entry(U unit, int id) {
+			this.unit = unit;
+			this.id = id;
+		}
+	}
+
+	private static int slot(U u, int mask) {
+		int h = System.identityHashCode(u) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/** Puts an entry into a table with a free slot. */
+	private static void put(Entry[] ids, Entry e) {
+		int mask = ids.length - 1;
+		int i = slot(e.unit, mask);
+		while (ids[i] != null) i = (i + 1) & mask;
+		ids[i] = e;
+	}
+
+	/** Returns the id of a unit in a state, or -1. */
+	private static int find(State s, U u) {
+		Entry[] ids = s.ids;
+		int mask = ids.length - 1;
+		for (int i = slot(u, mask); ; i = (i + 1) & mask) {
+			Entry e = ids[i];
+			if (e == null) return -1;
+			if (e.unit == u) return e.id < s.size ? e.id : -1; // An entry of a registration in progress is not visible yet
+		}
+	}
+
+	/** Adds a unit, with the next id. Must hold the lock of the registry. */
+	void add(U u) {
+		State s = state;
+		int n = s.size;
+		double[][] factors = s.factors;
+		U[] units = s.units;
+		if (n == units.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, 2 * n);
+			factors = Arrays.copyOf(factors, capacity);
+			for (int i = 0; i < n; i++) factors[i] = Arrays.copyOf(factors[i], capacity);
+			units = Arrays.copyOf(units, capacity);
+		}
+		factors[n] = new double[units.length];
+		for (int i = 0; i < n; i++) {
+			U v = units[i];
+			boolean same = v.isSameQuantity(u);
+			factors[i][n] = same ? v.getLength() / u.getLength() : Double.NaN;
+			factors[n][i] = same ? u.getLength() / v.getLength() : Double.NaN;
+		}
+		factors[n][n] = 1;
+		units[n] = u;
+		Entry[] ids = s.ids;
+		if (2 * (n + 1) > ids.length) {
+			ids = new Entry[2 * ids.length];
+			for (Entry e : s.ids) {
+				if (e != null) put(ids, e);
+			}
+		}
+		put(ids, new Entry(u, n));
+		state = new State(factors, units, ids, n + 1);
+	}
+
+	/**
+	 * Returns the id of a unit.
+	 *
+	 * @param u a unit.
+	 * @return the id of the unit, or -1 if it is not registered.
+	 */
+	public int id(U u) {
+		return find(state, u);
+	}
+
+	/**
+	 * Returns the unit with an id.
+	 *
+	 * @param id the id of a unit.
+	 * @return the unit.
+	 * @throws IndexOutOfBoundsException if there is no unit with that id.
+	 */
+	public U unit(int id) {
+		State s = state;
+		checkId(s, id);
+		return s.units[id];
+	}
+
+	/**
+	 * Returns the number of units in the table.
+	 * @return the number of units, one more than the largest id.
+	 */
+	public int size() {
+		return state.size;
+	}
+
+	/**
+	 * Returns the factor a value is multiplied with when converted between two units.
+	 *
+	 * @param from the id of the unit to convert from.
+	 * @param to the id of the unit to convert to.
+	 * @return the conversion factor, or NaN if the units are not of the same quantity.
+	 * @throws IndexOutOfBoundsException if there is no unit with one of the ids.
+	 */
+	public double factor(int from, int to) {
+		State s = state;
+		checkId(s, from);
+		checkId(s, to);
+		return s.factors[from][to];
+	}
+
+	/**
+	 * Returns the factor a value is multiplied with when converted between two units, registered or not.
+	 *
+	 * @param from the unit to convert from.
+	 * @param to the unit to convert to.
+	 * @return the conversion factor.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 */
+	public double factor(U from, U to) throws UnitMismatchException {
+		State s = state;
+		int i = find(s, from);
+		int j = find(s, to);
+		if (i < 0 || j < 0) return ConversionCache.DEFAULT.get(from, to).factor();
+		double f = s.factors[i][j];
+		if (f != f) throw U.mismatch(from, to); // NaN
+		return f;
+	}
+
+	/**
+	 * Converts a range of values between two registered units.
+	 *
+	 * @param from the id of the unit of src.
+	 * @param src values in the unit from.
+	 * @param srcPos the first index of src to convert.
+	 * @param to the id of the unit to convert to.
+	 * @param dst the array to write the converted values to. May be src.
+	 * @param dstPos the index of dst to write the first converted value to.
+	 * @param length the number of values to convert.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 * @throws IndexOutOfBoundsException if there is no unit with one of the ids, or a range is out of bounds.
+	 */
+	public void convert(int from, double[] src, int srcPos, int to, double[] dst, int dstPos, int length) throws UnitMismatchException {
+		State s = state;
+		checkId(s, from);
+		checkId(s, to);
+		double f = s.factors[from][to];
+		if (f != f) throw U.mismatch(s.units[from], s.units[to]);
+		if (srcPos < 0 || dstPos < 0 || length < 0 || srcPos + length > src.length || dstPos + length > dst.length) {
+			throw new ArrayIndexOutOfBoundsException(String.format("Range [%d, %d) of %d values does not fit into [%d, %d) of %d values.",
+					  srcPos, srcPos + length, src.length, dstPos, dstPos + length, dst.length));
+		}
+		Kernels.scale(src, srcPos, dst, dstPos, length, f);
+	}
+
+	/**
+	 * Converts every value of an array. Same as {@link UVArray#convert(U)}, with a table lookup instead of a cache lookup
+	 * when both units are registered.
+	 *
+	 * @param a the values to convert.
+	 * @param to the unit to convert to.
+	 * @return an array with the same values but expressed in the unit to.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 */
+	public UVArray convert(UVArray a, U to) throws UnitMismatchException {
+		double[] result = new double[a.length];
+		Kernels.scale(a.values, a.offset, result, 0, a.length, factor(a.unit(), to));
+		return new UVArray(result, to);
+	}
+
+	private static void checkId(State s, int id) {
+		if (id < 0 || id >= s.size) throw new IndexOutOfBoundsException(String.format("No unit with id %d among %d units.", id, s.size));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ConversionMatrix[%d units]", state.size);
+	}
+
+}
@@ -0,0 +1,154 @@
+package io.guldbrand.unit;
+
+/**
+ * Compiled conversion between two units of the same quantity.
+ * <p>
+ * The units are checked and the conversion factor is calculated once, when the converter is created by {@link U#converterTo(U)}.
+ * Applying the converter is then a multiplication (or a multiplication and an addition for absolute conversion)
+ * on plain doubles, without creating any objects.
+ * <p>
+ * Absolute conversion between scales with offsets, see {@link U#getOffset()}, is the affine transform
+ * x * {@link #factor()} + {@link #offset()}, with both terms calculated once.
+ * <p>
+ * Ex: U.KM.div(U.H).converterTo(U.M.div(U.S)).apply(36) = 10
+ * Ex: U.CELSIUS.converterTo(U.FAHRENHEIT).applyAbsolute(100) = 212
+ */
+public final class Converter {
+
+	private final U from;
+	private final U to;
+
+	private final double factor; // Relative conversion: to = from * factor
+	private final double offset; // Absolute conversion: to = from * factor + offset
+
+	/**
+	 * Creates a converter between two units. The units are assumed to be of the same quantity.
+	 *
+	 * @param from the unit to convert from.
+	 * @param to the unit to convert to.
+	 */
+	Converter(U from, U to) {
+		this.from = from;
+		this.to = to;
+		this.factor = from.getLength() / to.getLength();
+		this.offset = from.getOffset() == to.getOffset() && from.getLength() == to.getLength() ? 0
+				  : (from.getOffset() * from.getLength() - to.getOffset() * to.getLength()) / to.getLength(); // Difference of the zeros, in to
+	}
+
+	/**
+	 * Returns the unit this converter converts from.
+	 * @return the unit this converter converts from.
+	 */
+	public U from() {
+		return from;
+	}
+
+	/**
+	 * Returns the unit this converter converts to.
+	 * @return the unit this converter converts to.
+	 */
+	public U to() {
+		return to;
+	}
+
+	/**
+	 * Returns the factor a value is multiplied with when converted.
+	 * @return the conversion factor.
+	 */
+	public double factor() {
+		return factor;
+	}
+
+	/**
+	 * Returns the value added after multiplying with the factor in absolute conversion.
+	 * @return the offset of {@link #from()} expressed in {@link #to()}, less the offset of {@link #to()}. 0 if neither unit has an offset.
+	 */
+	public double offset() {
+		return offset;
+	}
+
+	/**
+	 * Converts a value. Same as {@link UV#convert(U)} but on a plain double.
+	 *
+	 * @param value a value in the unit {@link #from()}.
+	 * @return the value expressed in the unit {@link #to()}.
+	 */
+	public double apply(double value) {
+		return value * factor;
+	}
+
+	/**
+	 * Converts a value while accounting for offset. Same as {@link UV#convertAbsolute(U)} but on a plain double.
+	 *
+	 * @param value a value in the unit {@link #from()}.
+	 * @return the value expressed in the unit {@link #to()}.
+	 */
+	public double applyAbsolute(double value) {
+		return value * factor + offset;
+	}
+
+	/**
+	 * Converts every value of an array. Source and destination may be the same array.
+	 *
+	 * @param src values in the unit {@link #from()}.
+	 * @param dst the array to write the converted values to. Must be at least as long as src.
+	 */
+	public void apply(double[] src, double[] dst) {
+		apply(src, 0, dst, 0, src.length);
+	}
+
+	/**
+	 * Converts a range of values.
+	 *
+	 * @param src values in the unit {@link #from()}.
+	 * @param srcPos the first index of src to convert.
+	 * @param dst the array to write the converted values to.
+	 * @param dstPos the index of dst to write the first converted value to.
+	 * @param length the number of values to convert.
+	 */
+	public void apply(double[] src, int srcPos, double[] dst, int dstPos, int length) {
+		checkRange(src, srcPos, dst, dstPos, length);
+		Kernels.scale(src, srcPos, dst, dstPos, length, factor);
+	}
+
+	/**
+	 * Converts every value of an array while accounting for offset. Source and destination may be the same array.
+	 *
+	 * @param src values in the unit {@link #from()}.
+	 * @param dst the array to write the converted values to. Must be at least as long as src.
+	 */
+	public void applyAbsolute(double[] src, double[] dst) {
+		applyAbsolute(src, 0, dst, 0, src.length);
+	}
+
+	/**
+	 * Converts a range of values while accounting for offset.
+	 *
+	 * @param src values in the unit {@link #from()}.
+	 * @param srcPos the first index of src to convert.
+	 * @param dst the array to write the converted values to.
+	 * @param dstPos the index of dst to write the first converted value to.
+	 * @param length the number of values to convert.
+	 */
+	public void applyAbsolute(double[] src, int srcPos, double[] dst, int dstPos, int length) {
+		if (offset == 0) {
+			apply(src, srcPos, dst, dstPos, length);
+			return;
+		}
+		checkRange(src, srcPos, dst, dstPos, length);
+		Kernels.affine(src, srcPos, dst, dstPos, length, factor, offset);
+	}
+
+	private static void checkRange(double[] src, int srcPos, double[] dst, int dstPos, int length) {
+		if (srcPos < 0 || dstPos < 0 || length < 0 || srcPos + length > src.length || dstPos + length > dst.length) {
+			throw new ArrayIndexOutOfBoundsException(String.format("Range [%d, %d) of %d values does not fit into [%d, %d) of %d values.",
+					  srcPos, srcPos + length, src.length, dstPos, dstPos + length, dst.length));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s -> %s", from, to);
+	}
+
+}
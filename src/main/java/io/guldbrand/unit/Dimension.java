@@ -0,0 +1,86 @@
+package io.guldbrand.unit;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Dimension signature, the total power of every base dimension of a unit.
+ *
+ * Ex: kg * m / s^2 has the signature [DISTANCE: 1, TIME: -2, MASS: 1].
+ *
+ * The signature is computed once and never changes. Two units can be added or converted into each other
+ * iff their signatures are equal, which makes that check a comparison of a few doubles.
+ * Powers may be fractional (m^0.5), so they are stored as doubles indexed by {@link Base#ordinal()}
+ * and rounded to a fixed grid to make equality exact.
+ */
+public final class Dimension {
+
+	private static final double GRID = 1e9; // Powers are rounded to 1e-9 so that 1/3 + 2/3 equals 1.
+
+	/** The signature of dimensionless units. */
+	public static final Dimension NONE = new Dimension(new double[Base.values().length]);
+
+	private final double[] powers; // Indexed by Base.ordinal(). NONE is always 0.
+	private final int hash;
+
+	private Dimension(double[] powers) {
+		this.powers = powers;
+		this.hash = Arrays.hashCode(powers);
+	}
+
+	/** Calculates the signature of a list of base unit components. */
+	static Dimension of(List<BU> components) {
+		if (components.isEmpty()) return NONE;
+		double[] powers = new double[Base.values().length];
+		for (BU bu : components) {
+			powers[bu.getQuantityBase().ordinal()] += bu.getPower();
+		}
+		powers[Base.NONE.ordinal()] = 0;
+		for (int i = 0; i < powers.length; i++) {
+			powers[i] = Math.rint(powers[i] * GRID) / GRID + 0.0; // + 0.0 turns -0.0 into 0.0
+		}
+		return new Dimension(powers);
+	}
+
+	/**
+	 * Returns the total power of a base dimension.
+	 *
+	 * @param base a base dimension.
+	 * @return the total power of the given base dimension.
+	 */
+	public double power(Base base) {
+		return powers[base.ordinal()];
+	}
+
+	/**
+	 * Returns whether this is the signature of a dimensionless unit.
+	 * @return true iff this is the signature of a dimensionless unit.
+	 */
+	public boolean isNone() {
+		return this == NONE || equals(NONE);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof Dimension)) return false;
+		Dimension d = (Dimension) obj;
+		return hash == d.hash && Arrays.equals(powers, d.powers);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("[");
+		for (Base base : Base.values()) {
+			if (powers[base.ordinal()] == 0) continue;
+			if (s.length() > 1) s.append(", ");
+			s.append(base).append(": ").append(powers[base.ordinal()]);
+		}
+		return s.append("]").toString();
+	}
+
+}
@@ -0,0 +1,448 @@
+package io.guldbrand.unit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Unit-checked formula over plain doubles.
+ * <p>
+ * A formula is built from variables with known units, combined like unit values with {@link #mul(Formula)}, {@link #div(Formula)},
+ * {@link #pow(double)}, {@link #add(Formula)} and {@link #sub(Formula)}. The units are checked and all conversion factors
+ * are folded into constants while the formula is built, so evaluating it is plain double arithmetic without any unit work.
+ * Adding or subtracting units of different quantities fails when the formula is built, not when it is evaluated.
+ * <p>
+ * Ex: Formula.var(0, U.KG).mul(Formula.var(1, U.M.div(U.S.pow(2)))).div(Formula.var(2, U.S)).to(U.N.div(U.S))
+ * evaluates (m * a) / t in N/s, with m in kg, a in m/s^2 and t in s.
+ * <p>
+ * Formulas are immutable and can be evaluated from several threads at once.
+ */
+public final class Formula {
+
+	private final U unit;
+	private final double scale; // The value is scale * expr
+	private final Expr expr; // Null for constants
+	private final U[] inputs; // The unit of each variable, by index
+
+	private Formula(U unit, double scale, Expr expr, U[] inputs) {
+		this.unit = unit;
+		this.scale = scale;
+		this.expr = expr;
+		this.inputs = inputs;
+	}
+
+	/**
+	 * Creates a variable. Variables are numbered from 0 and given as arguments to the evaluation methods in that order.
+	 *
+	 * @param index the position of the variable among the arguments.
+	 * @param unit the unit values of the variable are given in.
+	 * @return a formula that is the variable.
+	 */
+	public static Formula var(int index, U unit) {
+		if (index < 0) throw new IllegalArgumentException("Variable index must not be negative: " + index);
+		U[] inputs = new U[index + 1];
+		inputs[index] = unit;
+		return new Formula(unit, 1, new Var(index), inputs);
+	}
+
+	/**
+	 * Creates a constant.
+	 *
+	 * @param uv the value of the constant.
+	 * @return a formula that is the constant.
+	 */
+	public static Formula constant(UV uv) {
+		return new Formula(uv.unit(), uv.value(), null, new U[0]);
+	}
+
+	/**
+	 * Creates a dimensionless constant.
+	 *
+	 * @param value the value of the constant.
+	 * @return a formula that is the constant.
+	 */
+	public static Formula constant(double value) {
+		return new Formula(U.NONE, value, null, new U[0]);
+	}
+
+	/**
+	 * Multiplies this formula with another. Works like {@link UV#mul(UV)}.
+	 *
+	 * @param f the formula to multiply with.
+	 * @return the product of the formulas.
+	 */
+	public Formula mul(Formula f) {
+		AlgebraTable.Product product = unit.product(f.unit);
+		return new Formula(product.unit, scale * f.scale * product.factor, combine(Op.MUL, expr, f.expr), inputs(f));
+	}
+
+	/**
+	 * Divides this formula with another. Works like {@link UV#div(UV)}.
+	 *
+	 * @param f the formula to divide by.
+	 * @return the quotient of the formulas.
+	 */
+	public Formula div(Formula f) {
+		AlgebraTable.Product product = unit.product(f.unit.inverse());
+		Expr e = f.expr == null ? expr : new Binary(Op.DIV, expr != null ? expr : new Const(1), f.expr);
+		return new Formula(product.unit, scale / f.scale * product.factor, e, inputs(f));
+	}
+
+	/**
+	 * Raises this formula to a power. Works like {@link UV#pow(double)}.
+	 *
+	 * @param p the exponent.
+	 * @return this formula raised to the power p.
+	 */
+	public Formula pow(double p) {
+		if (p == 0) return new Formula(U.NONE, 1, null, inputs);
+		U u = unit.pow(p);
+		Converter c = ConversionCache.DEFAULT.find(unit, u.pow(1.0 / p));
+		if (c == null) {
+			throw new IllegalStateException(String.format("The root of %s to the power of %s is not of the same quantity as %s.", u, 1.0 / p, unit));
+		}
+		return new Formula(u, Math.pow(scale * c.factor(), p), expr != null ? new Pow(expr, p) : null, inputs);
+	}
+
+	/**
+	 * Adds another formula to this one. The result is in the unit of this formula.
+	 *
+	 * @param f the formula to add.
+	 * @return the sum of the formulas.
+	 * @throws UnitMismatchException if the formulas are not of the same quantity.
+	 */
+	public Formula add(Formula f) throws UnitMismatchException {
+		return sum(Op.ADD, f);
+	}
+
+	/**
+	 * Subtracts another formula from this one. The result is in the unit of this formula.
+	 *
+	 * @param f the formula to subtract.
+	 * @return the difference of the formulas.
+	 * @throws UnitMismatchException if the formulas are not of the same quantity.
+	 */
+	public Formula sub(Formula f) throws UnitMismatchException {
+		return sum(Op.SUB, f);
+	}
+
+	private Formula sum(Op op, Formula f) throws UnitMismatchException {
+		double factor = ConversionCache.DEFAULT.get(f.unit, unit).factor();
+		Expr e = new Binary(op, scaled(scale, expr), scaled(f.scale * factor, f.expr));
+		return new Formula(unit, 1, e, inputs(f));
+	}
+
+	/**
+	 * Converts the result of this formula to another unit.
+	 *
+	 * @param to the unit the formula should give its result in.
+	 * @return the same formula with its result in the unit to.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as the result of this formula.
+	 */
+	public Formula to(U to) throws UnitMismatchException {
+		return new Formula(to, scale * ConversionCache.DEFAULT.get(unit, to).factor(), expr, inputs);
+	}
+
+	/**
+	 * Returns the unit of the result of this formula.
+	 * @return the unit of the result.
+	 */
+	public U unit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the number of arguments this formula takes, which is the highest variable index plus one.
+	 * @return the number of arguments.
+	 */
+	public int arity() {
+		return inputs.length;
+	}
+
+	/**
+	 * Returns the unit of a variable.
+	 *
+	 * @param index the index of the variable.
+	 * @return the unit the values of the variable are given in, or null if the formula has no variable with that index.
+	 */
+	public U inputUnit(int index) {
+		return index < inputs.length ? inputs[index] : null;
+	}
+
+	/**
+	 * Evaluates this formula.
+	 *
+	 * @param values the value of each variable, in the unit of the variable.
+	 * @return the result, in {@link #unit()}.
+	 */
+	public double evaluate(double... values) {
+		if (values.length < inputs.length) throw new IllegalArgumentException("Expected " + inputs.length + " values, got " + values.length);
+		return expr == null ? scale : scale * expr.eval(values);
+	}
+
+	/**
+	 * Evaluates this formula on unit values, which are converted to the units of the variables first.
+	 *
+	 * @param values the value of each variable.
+	 * @return the result.
+	 * @throws UnitMismatchException if a value is not of the same quantity as its variable.
+	 */
+	public UV evaluate(UV... values) throws UnitMismatchException {
+		if (values.length < inputs.length) throw new IllegalArgumentException("Expected " + inputs.length + " values, got " + values.length);
+		double[] d = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			d[i] = inputs.length > i && inputs[i] != null ? values[i].convert(inputs[i]).value() : values[i].value();
+		}
+		return new UV(evaluate(d), unit);
+	}
+
+	/**
+	 * Returns this formula as a function of one variable.
+	 *
+	 * @return an operator evaluating this formula.
+	 * @throws IllegalStateException if the formula has more than one variable.
+	 */
+	public DoubleUnaryOperator toUnaryOperator() {
+		if (inputs.length > 1) throw new IllegalStateException("Formula has " + inputs.length + " variables.");
+		DoubleBinaryOperator op = toBinaryOperator();
+		return x -> op.applyAsDouble(x, 0);
+	}
+
+	/**
+	 * Returns this formula as a function of two variables.
+	 *
+	 * @return an operator evaluating this formula.
+	 * @throws IllegalStateException if the formula has more than two variables.
+	 */
+	public DoubleBinaryOperator toBinaryOperator() {
+		if (inputs.length > 2) throw new IllegalStateException("Formula has " + inputs.length + " variables.");
+		return scaled(scale, expr).binary();
+	}
+
+	/**
+	 * Returns this formula as a method handle taking {@link #arity()} double arguments and returning a double.
+	 * The handle is a tree of method handle combinators, which the JIT compiler can inline like ordinary code.
+	 *
+	 * @return a method handle evaluating this formula.
+	 */
+	public MethodHandle toMethodHandle() {
+		Class<?>[] params = new Class<?>[inputs.length];
+		Arrays.fill(params, double.class);
+		return scaled(scale, expr).handle(MethodType.methodType(double.class, params));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Formula[%s, %d variables]", unit, inputs.length);
+	}
+
+	/** Merges the variables of this formula and another. */
+	private U[] inputs(Formula f) {
+		U[] merged = Arrays.copyOf(inputs, Math.max(inputs.length, f.inputs.length));
+		for (int i = 0; i < f.inputs.length; i++) {
+			if (f.inputs[i] == null) continue;
+			if (merged[i] != null && merged[i] != f.inputs[i]) {
+				throw new IllegalArgumentException(String.format("Variable %d is used with two different units: %s and %s.", i, merged[i], f.inputs[i]));
+			}
+			merged[i] = f.inputs[i];
+		}
+		return merged;
+	}
+
+	/** Combines two expressions. Null expressions are the constant 1. */
+	private static Expr combine(Op op, Expr a, Expr b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		return new Binary(op, a, b);
+	}
+
+	/** Returns scale * e as an expression. */
+	private static Expr scaled(double scale, Expr e) {
+		if (e == null) return new Const(scale);
+		return scale == 1 ? e : new Binary(Op.MUL, new Const(scale), e);
+	}
+
+	/* Expressions */
+
+	private enum Op {
+		MUL("mul"), DIV("div"), ADD("add"), SUB("sub");
+
+		private final MethodHandle handle;
+
+		/** @param method the name of the static method of this operation. Not derived from name(), which would depend on the locale. */
+		Op(String method) {
+			try {
+				handle = MethodHandles.lookup().findStatic(Op.class, method,
+						  MethodType.methodType(double.class, double.class, double.class));
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		double apply(double a, double b) {
+			switch (this) {
+				case MUL: return a * b;
+				case DIV: return a / b;
+				case ADD: return a + b;
+				default: return a - b;
+			}
+		}
+
+		private static double mul(double a, double b) {
+			return a * b;
+		}
+
+		private static double div(double a, double b) {
+			return a / b;
+		}
+
+		private static double add(double a, double b) {
+			return a + b;
+		}
+
+		private static double sub(double a, double b) {
+			return a - b;
+		}
+	}
+
+	private static final MethodHandle POW;
+	static {
+		try {
+			POW = MethodHandles.lookup().findStatic(Math.class, "pow", MethodType.methodType(double.class, double.class, double.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** A node of a formula, without units. */
+	private abstract static class Expr {
+		/** Evaluates this expression for any number of variables. */
+		abstract double eval(double[] x);
+
+		/** Compiles this expression for at most two variables. */
+		abstract DoubleBinaryOperator binary();
+
+		/** Compiles this expression to a method handle of the given type, which has a double parameter per variable. */
+		abstract MethodHandle handle(MethodType type);
+	}
+
+	private static final class Var extends Expr {
+		private final int index;
+
+		Var(int index) {
+			this.index = index;
+		}
+
+		double eval(double[] x) {
+			return x[index];
+		}
+
+		DoubleBinaryOperator binary() {
+			return index == 0 ? (a, b) -> a : (a, b) -> b;
+		}
+
+		MethodHandle handle(MethodType type) {
+			MethodHandle h = MethodHandles.identity(double.class);
+			h = MethodHandles.dropArguments(h, 0, type.parameterList().subList(0, index));
+			return MethodHandles.dropArguments(h, index + 1, type.parameterList().subList(index + 1, type.parameterCount()));
+		}
+	}
+
+	private static final class Const extends Expr {
+		private final double value;
+
+		Const(double value) {
+			this.value = value;
+		}
+
+		double eval(double[] x) {
+			return value;
+		}
+
+		DoubleBinaryOperator binary() {
+			double v = value;
+			return (a, b) -> v;
+		}
+
+		MethodHandle handle(MethodType type) {
+			return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, type.parameterList());
+		}
+	}
+
+	private static final class Binary extends Expr {
+		private final Op op;
+		private final Expr left;
+		private final Expr right;
+
+		Binary(Op op, Expr left, Expr right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		double eval(double[] x) {
+			return op.apply(left.eval(x), right.eval(x));
+		}
+
+		DoubleBinaryOperator binary() {
+			DoubleBinaryOperator l = left.binary();
+			DoubleBinaryOperator r = right.binary();
+			if (left instanceof Const) { // Scaling, the most common case
+				double c = ((Const) left).value;
+				switch (op) {
+					case MUL: return (a, b) -> c * r.applyAsDouble(a, b);
+					case DIV: return (a, b) -> c / r.applyAsDouble(a, b);
+					default: break;
+				}
+			}
+			switch (op) {
+				case MUL: return (a, b) -> l.applyAsDouble(a, b) * r.applyAsDouble(a, b);
+				case DIV: return (a, b) -> l.applyAsDouble(a, b) / r.applyAsDouble(a, b);
+				case ADD: return (a, b) -> l.applyAsDouble(a, b) + r.applyAsDouble(a, b);
+				default: return (a, b) -> l.applyAsDouble(a, b) - r.applyAsDouble(a, b);
+			}
+		}
+
+		MethodHandle handle(MethodType type) {
+			// op(left(x...), right(x...)): collect both into op, then pass x... to both
+			int n = type.parameterCount();
+			MethodHandle h = MethodHandles.collectArguments(op.handle, 1, right.handle(type));
+			h = MethodHandles.collectArguments(h, 0, left.handle(type));
+			int[] reorder = new int[2 * n];
+			for (int i = 0; i < reorder.length; i++) reorder[i] = i % n;
+			return MethodHandles.permuteArguments(h, type, reorder);
+		}
+	}
+
+	private static final class Pow extends Expr {
+		private final Expr base;
+		private final double p;
+
+		Pow(Expr base, double p) {
+			this.base = base;
+			this.p = p;
+		}
+
+		double eval(double[] x) {
+			return Math.pow(base.eval(x), p);
+		}
+
+		DoubleBinaryOperator binary() {
+			DoubleBinaryOperator b = base.binary();
+			double e = p;
+			if (e == 2) return (x, y) -> {
+				double v = b.applyAsDouble(x, y);
+				return v * v;
+			};
+			return (x, y) -> Math.pow(b.applyAsDouble(x, y), e);
+		}
+
+		MethodHandle handle(MethodType type) {
+			return MethodHandles.collectArguments(MethodHandles.insertArguments(POW, 1, p), 0, base.handle(type));
+		}
+	}
+
+}
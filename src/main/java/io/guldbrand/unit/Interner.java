@@ -0,0 +1,110 @@
+package io.guldbrand.unit;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Intern table for units, returning one canonical instance per structurally identical unit.
+ * <p>
+ * Two units are structurally identical if they have the same components, compound length, compound power and names.
+ * Such units behave identically in every operation and can be shared.
+ * <p>
+ * The table only holds weak references to its units, so ad-hoc units created by unit arithmetic are still garbage collected.
+ */
+final class Interner {
+
+	private final ConcurrentHashMap<Key, Ref> table = new ConcurrentHashMap<Key, Ref>();
+	private final ReferenceQueue<U> queue = new ReferenceQueue<U>();
+
+	/**
+	 * Returns the canonical instance of a unit. If there is none, the given unit becomes the canonical instance.
+	 *
+	 * @param u the unit to intern.
+	 * @return a unit structurally identical to u.
+	 */
+	U intern(U u) {
+		expunge();
+		Key key = new Key(u);
+		Ref ref = new Ref(u, key, queue);
+		while (true) {
+			Ref existing = table.putIfAbsent(key, ref);
+			if (existing == null) return u;
+			U canonical = existing.get();
+			if (canonical != null) return canonical;
+			if (table.replace(key, existing, ref)) return u; // Canonical instance has been collected
+		}
+	}
+
+	/**
+	 * Returns the number of units in the table, including units that have been collected but not yet removed.
+	 * @return the number of units in the table.
+	 */
+	int size() {
+		return table.size();
+	}
+
+	/** Removes entries whose units have been garbage collected. */
+	private void expunge() {
+		Ref ref;
+		while ((ref = (Ref) queue.poll()) != null) {
+			table.remove(ref.key, ref);
+		}
+	}
+
+	private static final class Ref extends WeakReference<U> {
+		private final Key key;
+
+		Ref(U u, Key key, ReferenceQueue<U> queue) {
+			super(u, queue);
+			this.key = key;
+		}
+	}
+
+	/** The structure of a unit. Must not reference the unit itself, or the unit could never be collected. */
+	private static final class Key {
+		private final List<BU> components;
+		private final double compoundLength;
+		private final double compoundPower;
+		private final String shortCompoundName;
+		private final String longCompoundName;
+		private final int hash;
+
+		Key(U u) {
+			this.components = u.components;
+			this.compoundLength = u.getCompoundLength();
+			this.compoundPower = u.getCompoundPower();
+			this.shortCompoundName = u.getShortCompoundName();
+			this.longCompoundName = u.getLongCompoundName();
+
+			int h = shortCompoundName.hashCode();
+			h = 31 * h + Double.hashCode(compoundLength);
+			h = 31 * h + Double.hashCode(compoundPower);
+			for (BU bu : components) {
+				h = 31 * h + bu.structureHash();
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key k = (Key) obj;
+			if (hash != k.hash || components.size() != k.components.size()) return false;
+			if (Double.compare(compoundLength, k.compoundLength) != 0 || Double.compare(compoundPower, k.compoundPower) != 0) return false;
+			if (!shortCompoundName.equals(k.shortCompoundName) || !longCompoundName.equals(k.longCompoundName)) return false;
+			for (int i = 0; i < components.size(); i++) {
+				if (!components.get(i).isSameStructure(k.components.get(i))) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package io.guldbrand.unit;
+
+/**
+ * Element-wise loops over ranges of doubles, shared by {@link Converter}, {@link UVArray} and {@link ParallelUV}.
+ * <p>
+ * This is the scalar version, used on Java 8 to 16. The multi-release jar contains a version for Java 17 and later,
+ * in src/main/java17, which uses the Vector API when the jdk.incubator.vector module is present. Both versions produce
+ * the same results, bit for bit: every element is calculated with the same operations, in the same order.
+ * <p>
+ * Ranges are not checked. Source and destination may be the same array, at the same position.
+ */
+final class Kernels {
+
+	/** Whether the loops use the Vector API. Never in this version. */
+	static final boolean VECTORIZED;
+
+	static {
+		VECTORIZED = false; // Not a compile-time constant, so that callers read the value of the version that is loaded
+	}
+
+	private Kernels() {
+	}
+
+	/** dst = src * factor */
+	static void scale(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor;
+		}
+	}
+
+	/** dst = src * factor + offset */
+	static void affine(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor, double offset) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor + offset;
+		}
+	}
+
+	/** dst = x + y * f */
+	static void add(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] + y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x - y * f */
+	static void sub(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] - y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x * y * f */
+	static void mul(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] * y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x / y * f */
+	static void div(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] / y[yPos + i] * f;
+		}
+	}
+
+}
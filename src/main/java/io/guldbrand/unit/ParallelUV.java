@@ -0,0 +1,278 @@
+package io.guldbrand.unit;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Parallel bulk operations on {@link UVArray}s.
+ * <p>
+ * Every operation first checks the units and calculates its conversion factor, exactly once. The values are then split
+ * into ranges that are processed by the tasks of a {@link ForkJoinPool}. Arrays no longer than the threshold are processed
+ * on the calling thread, as splitting them would cost more than it gains.
+ * <p>
+ * Results are the same as those of the corresponding sequential {@link UVArray} methods,
+ * except for rounding in {@link #sum(UVArray)} and {@link #mean(UVArray)} since values are added in a different order.
+ */
+public final class ParallelUV {
+
+	/** The default number of values below which arrays are not split. */
+	public static final int DEFAULT_THRESHOLD = 1 << 14;
+
+	/** Runs on the common pool with the default threshold. */
+	public static final ParallelUV DEFAULT = new ParallelUV(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+
+	/**
+	 * Creates parallel operations running in the given pool.
+	 *
+	 * @param pool the pool to run tasks in.
+	 * @param threshold the maximum number of values a task processes without splitting.
+	 */
+	public ParallelUV(ForkJoinPool pool, int threshold) {
+		if (threshold < 1) throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/** Converts every value of an array to another unit. Same as {@link UVArray#convert(U)}.
+	 *
+	 * @param a the values to convert.
+	 * @param to the Unit to convert to.
+	 * @return an array with the same values but expressed in a different unit.
+	 * @throws UnitMismatchException If the unit of the array can't be converted to the target unit.
+	 */
+	public UVArray convert(UVArray a, U to) throws UnitMismatchException {
+		final Converter c = ConversionCache.DEFAULT.get(a.unit(), to);
+		final double[] src = a.values;
+		final int offset = a.offset;
+		final double[] result = new double[a.length];
+		run(a.length, (from, until) -> c.apply(src, offset + from, result, from, until - from));
+		return new UVArray(result, to);
+	}
+
+	/** Converts every value of an array while accounting for offset. Same as {@link UVArray#convertAbsolute(U)}.
+	 *
+	 * @param a the values to convert.
+	 * @param to the Unit to convert to.
+	 * @return an array with the same values but expressed in a different unit.
+	 * @throws UnitMismatchException If the unit of the array can't be converted to the target unit.
+	 */
+	public UVArray convertAbsolute(UVArray a, U to) throws UnitMismatchException {
+		final Converter c = ConversionCache.DEFAULT.get(a.unit(), to);
+		final double[] src = a.values;
+		final int offset = a.offset;
+		final double[] result = new double[a.length];
+		run(a.length, (from, until) -> c.applyAbsolute(src, offset + from, result, from, until - from));
+		return new UVArray(result, to);
+	}
+
+	/**
+	 * Adds two arrays element by element. Same as {@link UVArray#add(UVArray)}.
+	 *
+	 * @param a the first array.
+	 * @param b the array to add. Must have the same length as a.
+	 * @return an array of the sums, in the unit of a.
+	 * @throws UnitMismatchException if the units of the arrays are not of the same quantity.
+	 */
+	public UVArray add(UVArray a, UVArray b) throws UnitMismatchException {
+		a.checkLength(b);
+		final double f = ConversionCache.DEFAULT.get(b.unit(), a.unit()).factor();
+		final double[] x = a.values, y = b.values, result = new double[a.length];
+		final int xOffset = a.offset, yOffset = b.offset;
+		run(a.length, (from, until) -> Kernels.add(x, xOffset + from, y, yOffset + from, result, from, until - from, f));
+		return new UVArray(result, a.unit());
+	}
+
+	/**
+	 * Subtracts two arrays element by element. Same as {@link UVArray#sub(UVArray)}.
+	 *
+	 * @param a the first array.
+	 * @param b the array to subtract. Must have the same length as a.
+	 * @return an array of the differences, in the unit of a.
+	 * @throws UnitMismatchException if the units of the arrays are not of the same quantity.
+	 */
+	public UVArray sub(UVArray a, UVArray b) throws UnitMismatchException {
+		a.checkLength(b);
+		final double f = ConversionCache.DEFAULT.get(b.unit(), a.unit()).factor();
+		final double[] x = a.values, y = b.values, result = new double[a.length];
+		final int xOffset = a.offset, yOffset = b.offset;
+		run(a.length, (from, until) -> Kernels.sub(x, xOffset + from, y, yOffset + from, result, from, until - from, f));
+		return new UVArray(result, a.unit());
+	}
+
+	/**
+	 * Multiplies two arrays element by element. Same as {@link UVArray#mul(UVArray)}.
+	 *
+	 * @param a the first array.
+	 * @param b the array to multiply with. Must have the same length as a.
+	 * @return an array of the products.
+	 */
+	public UVArray mul(UVArray a, UVArray b) {
+		a.checkLength(b);
+		AlgebraTable.Product product = a.unit().product(b.unit());
+		final double f = product.factor;
+		final double[] x = a.values, y = b.values, result = new double[a.length];
+		final int xOffset = a.offset, yOffset = b.offset;
+		run(a.length, (from, until) -> Kernels.mul(x, xOffset + from, y, yOffset + from, result, from, until - from, f));
+		return new UVArray(result, product.unit);
+	}
+
+	/**
+	 * Divides two arrays element by element. Same as {@link UVArray#div(UVArray)}.
+	 *
+	 * @param a the first array.
+	 * @param b the array to divide by. Must have the same length as a.
+	 * @return an array of the quotients.
+	 */
+	public UVArray div(UVArray a, UVArray b) {
+		a.checkLength(b);
+		AlgebraTable.Product product = a.unit().product(b.unit().inverse());
+		final double f = product.factor;
+		final double[] x = a.values, y = b.values, result = new double[a.length];
+		final int xOffset = a.offset, yOffset = b.offset;
+		run(a.length, (from, until) -> Kernels.div(x, xOffset + from, y, yOffset + from, result, from, until - from, f));
+		return new UVArray(result, product.unit);
+	}
+
+	/**
+	 * Calculates the sum of all values of an array.
+	 *
+	 * @param a the values to sum.
+	 * @return the sum, in the unit of the array.
+	 */
+	public UV sum(UVArray a) {
+		final double[] values = a.values;
+		final int offset = a.offset;
+		double sum = reduce(a.length, 0, (from, until) -> {
+			double s = 0;
+			for (int i = offset + from; i < offset + until; i++) s += values[i];
+			return s;
+		}, (x, y) -> x + y);
+		return new UV(sum, a.unit());
+	}
+
+	/**
+	 * Calculates the smallest value of an array.
+	 *
+	 * @param a the values.
+	 * @return the smallest value, in the unit of the array. NaN if the array is empty.
+	 */
+	public UV min(UVArray a) {
+		final double[] values = a.values;
+		final int offset = a.offset;
+		double min = reduce(a.length, Double.NaN, (from, until) -> {
+			double m = Double.POSITIVE_INFINITY;
+			for (int i = offset + from; i < offset + until; i++) m = Math.min(m, values[i]);
+			return m;
+		}, Math::min);
+		return new UV(min, a.unit());
+	}
+
+	/**
+	 * Calculates the largest value of an array.
+	 *
+	 * @param a the values.
+	 * @return the largest value, in the unit of the array. NaN if the array is empty.
+	 */
+	public UV max(UVArray a) {
+		final double[] values = a.values;
+		final int offset = a.offset;
+		double max = reduce(a.length, Double.NaN, (from, until) -> {
+			double m = Double.NEGATIVE_INFINITY;
+			for (int i = offset + from; i < offset + until; i++) m = Math.max(m, values[i]);
+			return m;
+		}, Math::max);
+		return new UV(max, a.unit());
+	}
+
+	/**
+	 * Calculates the arithmetic mean of all values of an array.
+	 *
+	 * @param a the values.
+	 * @return the mean, in the unit of the array. NaN if the array is empty.
+	 */
+	public UV mean(UVArray a) {
+		return new UV(sum(a).value() / a.length(), a.unit());
+	}
+
+	private void run(int length, Range range) {
+		if (length <= threshold) {
+			range.run(0, length);
+		} else {
+			pool.invoke(new Action(range, 0, length));
+		}
+	}
+
+	private double reduce(int length, double empty, RangeReduction leaf, DoubleBinaryOperator combine) {
+		if (length == 0) return empty;
+		if (length <= threshold) return leaf.reduce(0, length);
+		return pool.invoke(new Reduction(leaf, combine, 0, length));
+	}
+
+	/** Processes the values in [from, until). */
+	@FunctionalInterface
+	private interface Range {
+		void run(int from, int until);
+	}
+
+	/** Reduces the values in [from, until), which is never empty, to one value. */
+	@FunctionalInterface
+	private interface RangeReduction {
+		double reduce(int from, int until);
+	}
+
+	private final class Action extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Range range;
+		private final int from;
+		private final int until;
+
+		Action(Range range, int from, int until) {
+			this.range = range;
+			this.from = from;
+			this.until = until;
+		}
+
+		@Override
+		protected void compute() {
+			if (until - from <= threshold) {
+				range.run(from, until);
+			} else {
+				int mid = (from + until) >>> 1;
+				invokeAll(new Action(range, from, mid), new Action(range, mid, until));
+			}
+		}
+	}
+
+	private final class Reduction extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		private final RangeReduction leaf;
+		private final DoubleBinaryOperator combine;
+		private final int from;
+		private final int until;
+
+		Reduction(RangeReduction leaf, DoubleBinaryOperator combine, int from, int until) {
+			this.leaf = leaf;
+			this.combine = combine;
+			this.from = from;
+			this.until = until;
+		}
+
+		@Override
+		protected Double compute() {
+			if (until - from <= threshold) return leaf.reduce(from, until);
+			int mid = (from + until) >>> 1;
+			Reduction left = new Reduction(leaf, combine, from, mid);
+			left.fork();
+			double right = new Reduction(leaf, combine, mid, until).compute();
+			return combine.applyAsDouble(left.join(), right);
+		}
+	}
+
+}
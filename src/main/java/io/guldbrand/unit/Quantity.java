@@ -7,8 +7,8 @@ package io.guldbrand.unit;
  */
 public class Quantity {
 	
-	private Base base;
-	private double power;
+	private final Base base;
+	private final double power;
 	
 	/**
 	 * Creates a new quantity with a certain base and power.
@@ -36,7 +36,7 @@ public class Quantity {
 		if (obj == null) {
 	        return false;
 	    }
-	    if (!BU.class.isAssignableFrom(obj.getClass())) {
+	    if (!Quantity.class.isAssignableFrom(obj.getClass())) {
 	        return false;
 	    }
 	    Quantity q = (Quantity) obj;
@@ -45,6 +45,11 @@ public class Quantity {
 	    return false;
 	}
 
+	@Override
+	public int hashCode() {
+		return 31 * base.hashCode() + Double.hashCode(power);
+	}
+
 	Base getBase() {
 		return base;
 	}
@@ -63,7 +63,7 @@ class StatUV { // Package private until done. Should maybe be a different projec
 			uv.set(max);
 			return term;
 		} else if (newValue.compareTo(min) < 0) { // New value is less than min
-			term = max.sub(uv);
+			term = min.sub(uv);
 			uv.set(min);
 			return term;
 		}
@@ -1,5 +1,6 @@
 package io.guldbrand.unit;
 
+import java.text.ParseException;
 import java.util.*;
 /**
  * Compound Unit, a unit with one or more quantities.
@@ -8,20 +9,25 @@ import java.util.*;
  * <p>
  * Some additional functionality exists for doing absolute conversion between scales, as well as units such as months and years.
  * Those do however have limited functionality. This code should not be used to implement calendar systems.
+ * <p>
+ * Units created with the public constructors are registered in {@link UnitRegistry#DEFAULT}, where they can be looked up by name.
  */
 public class U { // Compound Unit
 	
-	private static ArrayList<U> allUnits = new ArrayList<U>(10);
+	private static final Interner interner = new Interner(); // Canonical instances of units created by unit arithmetic
+	private static final AlgebraTable algebra = new AlgebraTable(4096); // Memoized results of unit arithmetic
 
-	private double compoundLength = 1; // Not 1 for defined units based on compound units but with different length.
-	private double compoundPower = 1; // Not 1 for defined units based on compound units but with different power.
-	ArrayList<BU> components = new ArrayList<BU>(0);
+	private final double compoundLength; // Not 1 for defined units based on compound units but with different length.
+	private final double compoundPower; // Not 1 for defined units based on compound units but with different power.
+	final List<BU> components; // Unmodifiable
+	private final Dimension dimension; // Total power of each base dimension. Decides which units are convertible.
 
-	private String shortCompoundName = ""; // Short name of this compound unit, if any
-	private String longCompoundName = "";
+	private final double length; // The length of this unit relative to the base units. Calculated once from the components.
+	private final double offset; // The offset of this unit for absolute conversion, in this unit. 0 for compound units.
 
-	//Static list containing all created units. Used for parsing, lookup etc.
-	//private static ArrayList<U> units = new ArrayList<U>();
+	private final String shortCompoundName; // Short name of this compound unit, if any
+	private final String longCompoundName;
+	private String name; // Cached result of toString()
 
 	public static final U NONE = new U("none", "none", new Quantity(Base.NONE));
 
@@ -67,8 +73,8 @@ public class U { // Compound Unit
 	public static final U DEGREE = new U(RADIAN, 0.0174533, "deg", "degree");
 
 	public static final U KELVIN = new U("K", "kelvin", new Quantity(Base.TEMPERATURE));
-	//public static final U CELSIUS = new U(KELVIN, 1, 273.15, "°C", "celsius"); // TODO Enable offset
-	//public static final U FAHRENHEIT = new U(CELSIUS, 5.0 / 9.0, 459.67, "°F", "fahrenheit");
+	public static final U CELSIUS = new U(KELVIN, 1, 273.15, "\u00B0C", "celsius");
+	public static final U FAHRENHEIT = new U(CELSIUS, 5.0 / 9.0, 459.67, "\u00B0F", "fahrenheit");
 
 	public static final U N = new U(U.KG.mul(U.M).div(U.S.mul(U.S)));
 	public static final U CC = new U(CM.pow(3), 1, "cc", "cubic centimeter");
@@ -77,9 +83,39 @@ public class U { // Compound Unit
 	public static final U SCM = new U(CM.pow(2), 1, "sqcm", "square centimeter");
 
 	/**
-	 * Empty constructor.
+	 * Creates an unnamed unit from a list of components.
+	 *
+	 * @param components the base unit components of this unit. The list is owned by the new unit.
+	 */
+	private U(ArrayList<BU> components) {
+		this(components, 1, 1, "", "");
+	}
+
+	/**
+	 * Creates a unit from a list of components. All constructors end up here, which is where the dimension signature,
+	 * length and offset are calculated. Units are immutable and safe to share between threads.
+	 *
+	 * @param components the base unit components of this unit. The list is owned by the new unit.
 	 */
-	private U() {
+	private U(ArrayList<BU> components, double compoundLength, double compoundPower, String shortCompoundName, String longCompoundName) {
+		this.components = Collections.unmodifiableList(components);
+		this.compoundLength = compoundLength;
+		this.compoundPower = compoundPower;
+		this.shortCompoundName = shortCompoundName;
+		this.longCompoundName = longCompoundName;
+		this.dimension = Dimension.of(components);
+
+		double length = 1;
+		for (BU bu : components) {
+			length *= bu.getLength();
+		}
+		this.length = length * compoundLength;
+
+		// Only a scale, a single component to its defined power, has an offset. In a compound unit such as °C/s or °C^2,
+		// the component measures a difference, so the offset does not apply.
+		BU single = components.size() == 1 ? components.get(0) : null;
+		boolean scale = single != null && compoundPower == 1 && single.getPower() == single.getDefPower();
+		this.offset = scale ? single.getOffset() : 0;
 	}
 
 	/**
@@ -88,12 +124,7 @@ public class U { // Compound Unit
 	 * @param u the compound unit which to copy
 	 */
 	private U(U u) {
-		this.shortCompoundName = u.shortCompoundName;
-		this.longCompoundName = u.longCompoundName;
-		this.compoundLength = u.compoundLength;
-		this.compoundPower = u.compoundPower;
-
-		this.components.addAll(u.components);
+		this(new ArrayList<BU>(u.components), u.compoundLength, u.compoundPower, u.shortCompoundName, u.longCompoundName);
 	}
 	
 	/**
@@ -104,6 +135,8 @@ public class U { // Compound Unit
 	 */
 	public U (String shortName, String longName, Quantity quantity){
 		this(baseUnitFactory(new BU(1, shortName, longName, quantity)));
+		UnitRegistry.DEFAULT.register(this);
+		interner.intern(this); // Decoded copies of this unit resolve to it
 	}
 	
 	/**
@@ -115,37 +148,51 @@ public class U { // Compound Unit
 	 * @param longName the long name for this unit. For the SI-unit meter this would be "meter".
 	 */
 	public U(U u, double compoundLength, String shortName, String longName){
-		this(unitFactory(u, compoundLength, shortName, longName, 1));
-	}
-	
-	private U(U u, double compoundLength, String shortName, String longName, double compoundPower){
-		this(unitFactory(u, compoundLength, shortName, longName, compoundPower));
+		this(u, compoundLength, 0, shortName, longName);
 	}
 
-	private static U unitFactory(U u, double lengthFactor, String shortName, String longName, double compoundPower){
+	/**
+	 * Defines a new scale based on another unit, such as a temperature scale whose zero is not the zero of its quantity.
+	 * The offset is only used by absolute conversion, such as {@link UV#convertAbsolute(U)}. It is not inherited,
+	 * so a unit defined from this one has no offset unless it is given one. See {@link #getOffset()}.
+	 * <p>
+	 * Ex: new U(KELVIN, 1, 273.15, "°C", "celsius") since 0 °C is 273.15 K.
+	 *
+	 * @param u the Unit this unit will have the same quantity as. Must be of a single quantity, to the power of 1, if offset is not 0.
+	 * @param compoundLength the length of this unit compared to the other Unit.
+	 * @param offset the value that is added to a value in this unit to count it from the zero of the quantity, in this unit.
+	 * @param shortName the short name or abbreviation for this unit.
+	 * @param longName the long name for this unit.
+	 * @throws IllegalArgumentException if offset is not 0 and u is a compound unit.
+	 */
+	public U(U u, double compoundLength, double offset, String shortName, String longName){
+		this(unitFactory(u, compoundLength, offset, shortName, longName, 1));
+		UnitRegistry.DEFAULT.register(this);
+		interner.intern(this); // Decoded copies of this unit resolve to it
+	}
+	
+	private static U unitFactory(U u, double lengthFactor, double offset, String shortName, String longName, double compoundPower){
 		u = u.reduce();
 		if (u.components.size() <= 1 && compoundPower == 1) { //&& u.components.get(0).getPower() <= 1
-			return baseUnitFactory(u.components.get(0), lengthFactor, 0, shortName, longName);
+			BU bu = u.components.get(0);
+			if (offset != 0 && bu.getPower() != bu.getDefPower()) throw new IllegalArgumentException(String.format("%s cannot have an offset.", u));
+			return baseUnitFactory(bu, lengthFactor, offset, shortName, longName);
 		} else {
-			U v = compoundUnitFactory(u, lengthFactor, shortName, longName, compoundPower);
-			// If unit has a name and not already added, add it to the list of all created units. For unit recognition.
-			if (!v.shortCompoundName.equals("") && !allUnits.contains(v)) allUnits.add(v);
-			return v;
+			if (offset != 0) throw new IllegalArgumentException(String.format("Compound unit %s cannot have an offset.", u));
+			return compoundUnitFactory(u, lengthFactor, shortName, longName, compoundPower);
 		}
 	}
 
 	private static U baseUnitFactory(BU bu, double lengthFactor, double offset, String shortName, String longName) {
-		U v = new U();
 		// Create BU with same power as old one, but with another length and new name
 		BU newBu = new BU(bu.getLength() * lengthFactor, shortName, longName, bu.getQuantity(), bu.getPower(), offset);
 		
 		// Create U from BU
-		addComponent(newBu, v.components);
-		v.shortCompoundName = shortName;
-		v.longCompoundName = longName;
+		ArrayList<BU> components = new ArrayList<BU>(1);
+		addComponent(newBu, components);
 
 		//System.out.printf("Base: %s derived as %s: %s. Quantity: %s. From %s\n", v, v.getDerivedName(), v.components, newBu.getQuantity(), bu);
-		return v;
+		return new U(components, 1, 1, shortName, longName);
 	}
 
 	private static U baseUnitFactory(BU bu) {
@@ -168,22 +215,31 @@ public class U { // Compound Unit
 	 * @return
 	 */
 	private static U compoundUnitFactory(U u, double compoundLength, String shortCompoundName, String longCompoundName, double compoundPower) {
-		U v = new U();
-
-		v.compoundLength = Math.pow(compoundLength, compoundPower);
-		v.shortCompoundName = shortCompoundName;
-		v.longCompoundName = longCompoundName;
-		v.compoundPower = u.compoundPower * compoundPower;
-		//System.out.printf("Set compound power to %f from %f times %f.\n", v.compoundPower, u.compoundPower, compoundPower);
+		ArrayList<BU> components = new ArrayList<BU>(u.components.size());
 		//System.out.println("U pow: " + Arrays.toString(u.components.toArray()));
 		for (BU bu : u.components) {
 			bu = bu.pow(compoundPower);
 			//System.out.printf("Compound: %s, %s, power: %e\n", shortCompoundName, bu, bu.getPower());
-			addComponent(bu, v.components);
+			addComponent(bu, components);
 		}
 		//System.out.printf("Compound: %s to the power of %f derived as %s.\n", v.shortCompoundName, v.compoundPower, v.getDerivedName());
 
-		return v;
+		return new U(components, Math.pow(compoundLength, compoundPower), u.compoundPower * compoundPower, shortCompoundName, longCompoundName);
+	}
+
+	/**
+	 * Parses a unit expression such as "km/h", "kg*m/s^2" or "(kg*m)/s^2".
+	 * <p>
+	 * Unit names are looked up in {@link UnitRegistry#DEFAULT}, by short name first and then by long name.
+	 * Units can be combined with '*', '/', '^' and parentheses, so the names written by {@link #toString()} can be parsed back.
+	 * Results are cached, so parsing the same text again is a single hash lookup.
+	 *
+	 * @param text the unit expression.
+	 * @return the unit described by the text.
+	 * @throws ParseException if the text is not a valid expression or contains an unknown unit name.
+	 */
+	public static U parse(CharSequence text) throws ParseException {
+		return UnitParser.parse(text);
 	}
 
 	/**
@@ -193,10 +249,13 @@ public class U { // Compound Unit
 	 * @return The resulting Unit.
 	 */
 	public U mul(U a) { // TODO Compound name disappears here. Solve by implementing compound unit name recognition.
-		U u = new U();
-		U.addCompound(this, u);
-		U.addCompound(a, u);
-		return u;
+		U u = (U) algebra.get(AlgebraTable.MUL, this, a, 0);
+		if (u != null) return u;
+
+		ArrayList<BU> components = new ArrayList<BU>(this.components.size() + a.components.size());
+		U.addCompound(this, components);
+		U.addCompound(a, components);
+		return (U) algebra.put(AlgebraTable.MUL, this, a, 0, intern(new U(components)));
 	}
 
 	/**
@@ -206,10 +265,13 @@ public class U { // Compound Unit
 	 * @return The resulting (compound) unit.
 	 */
 	public U div(U a) {
-		U u = new U();
-		U.addCompound(this, u);
-		U.addCompound(a.inverse(), u);
-		return u;
+		U u = (U) algebra.get(AlgebraTable.DIV, this, a, 0);
+		if (u != null) return u;
+
+		ArrayList<BU> components = new ArrayList<BU>(this.components.size() + a.components.size());
+		U.addCompound(this, components);
+		U.addCompound(a.inverse(), components);
+		return (U) algebra.put(AlgebraTable.DIV, this, a, 0, intern(new U(components)));
 	}
 
 	/**
@@ -219,13 +281,41 @@ public class U { // Compound Unit
 	 * @return The resulting unit.
 	 */
 	public U pow(double p) {
-		U u = new U(this, this.compoundLength, this.shortCompoundName, this.longCompoundName, p);
+		U u = (U) algebra.get(AlgebraTable.POW, this, null, p);
+		if (u != null) return u;
+
+		u = intern(unitFactory(this, this.compoundLength, p == 1 ? this.offset : 0, this.shortCompoundName, this.longCompoundName, p));
 		//System.out.printf("Unit: Power %s to %s. My power is %f. P is %f.\n", this, u, this.compoundPower, p);
 		/*U u = new U();
 		for (BU bu: components){
 			u.components.add(bu.pow(p));
 		}*/
-		return u;
+		return (U) algebra.put(AlgebraTable.POW, this, null, p, u);
+	}
+
+	/**
+	 * Calculates the unit and scale of the product of a value in this unit and a value in another unit.
+	 * The result of {@link UV#mul(UV)} is (a.value * b.value * factor) in the returned unit.
+	 *
+	 * @param a the unit of the other factor.
+	 * @return the unit of the product and the factor to scale the product of the values with.
+	 */
+	AlgebraTable.Product product(U a) {
+		AlgebraTable.Product product = (AlgebraTable.Product) algebra.get(AlgebraTable.PRODUCT, this, a, 0);
+		if (product != null) return product;
+
+		if (this.equals(U.NONE) && !a.equals(U.NONE)) { // This unit is NONE, result will have other unit.
+			product = new AlgebraTable.Product(a, 1);
+		} else if (!this.equals(U.NONE) && a.equals(U.NONE)) { // Other unit is NONE, result will have this unit.
+			product = new AlgebraTable.Product(this, 1);
+		} else {
+			U resultUnit = this.mul(a).reduce(); // As a side-effect, resultUnit has been converted to composite units.
+			U resultMe = resultUnit.div(a).reduce(); // this but expressed in same composites as resultUnit
+			U resultThem = resultUnit.div(this).reduce(); // a but expressed in same composites as resultUnit
+			// Both have the same quantity as their source by construction, no need to check.
+			product = new AlgebraTable.Product(resultUnit, new Converter(this, resultMe).factor() * new Converter(a, resultThem).factor());
+		}
+		return (AlgebraTable.Product) algebra.put(AlgebraTable.PRODUCT, this, a, 0, product);
 	}
 
 	/**
@@ -255,17 +345,34 @@ public class U { // Compound Unit
 			qs[bu.getQuantityBase().ordinal()] += bu.getPower();
 		}
 
-		U result = new U();
+		ArrayList<BU> reduced = new ArrayList<BU>(components.size());
 		for (BU bu : components) {
 			if (Util.compareDouble(qs[bu.getQuantityBase().ordinal()], 0) != 0) {
-				U.addComponent(new BU(bu, qs[bu.getQuantityBase().ordinal()]), result.components);
+				U.addComponent(new BU(bu, qs[bu.getQuantityBase().ordinal()]), reduced);
 				qs[bu.getQuantityBase().ordinal()] = 0;
 			}
 		}
-		result.shortCompoundName = this.shortCompoundName;
-		result.longCompoundName = this.longCompoundName;
-		result.compoundPower = this.compoundPower;
-		return result;
+		return intern(new U(reduced, 1, this.compoundPower, this.shortCompoundName, this.longCompoundName));
+	}
+
+	/**
+	 * Returns the canonical instance of a unit, so that structurally identical results of unit arithmetic share one instance.
+	 *
+	 * @param u the unit to intern.
+	 * @return u or a structurally identical unit.
+	 */
+	private static U intern(U u) {
+		return interner.intern(u);
+	}
+
+	/**
+	 * Recreates a unit from its structure, as read by {@link UnitTable}.
+	 * If a unit with the same structure exists, such as one of the constants of this class, that unit is returned.
+	 *
+	 * @return the canonical unit with the given structure.
+	 */
+	static U fromStructure(ArrayList<BU> components, double compoundLength, double compoundPower, String shortCompoundName, String longCompoundName) {
+		return intern(new U(components, compoundLength, compoundPower, shortCompoundName, longCompoundName));
 	}
 
 	/**
@@ -306,11 +413,11 @@ public class U { // Compound Unit
 	 * Adds an entire compound unit to this compound unit. This is basically multiplying.
 	 *
 	 * @param from the unit to pull basic units from
-	 * @param to   the unit to add basic units to
+	 * @param to   the component list to add basic units to
 	 */
-	private static void addCompound(U from, U to) {
+	private static void addCompound(U from, ArrayList<BU> to) {
 		for (BU c : from.components) {
-			addComponent(c, to.components);
+			addComponent(c, to);
 		}
 	}
 
@@ -339,16 +446,16 @@ public class U { // Compound Unit
 	 **/
 	public static U dimDiff(U a, U b) {
 		// System.out.format("A: %s, B: %s \n", a, b);
-		U diff = new U();
+		ArrayList<BU> diff = new ArrayList<BU>(a.components.size() + b.components.size());
 		for (BU c : a.components) {
-			if (!b.hasComponent(c)) U.addComponent(c.inverse(), diff.components);
+			if (!b.hasComponent(c)) U.addComponent(c.inverse(), diff);
 		}
 
 		for (BU c : b.components) {
-			if (!a.hasComponent(c)) U.addComponent(c, diff.components);
+			if (!a.hasComponent(c)) U.addComponent(c, diff);
 		}
 
-		return diff;
+		return intern(new U(diff));
 	}
 
 	/**
@@ -358,9 +465,35 @@ public class U { // Compound Unit
 	 * @return True iff the units have the same quantity.
 	 */
 	public boolean isSameQuantity(U b) {
-		U diff = this.dimDiff(b);
-		//System.out.printf("Dim diff: A has %s, B has %s.\n", this.components, b.components);
-		return diff.reduce().components.size() == 0;
+		return dimension.equals(b.dimension);
+	}
+
+	/**
+	 * Returns the dimension signature of this unit, the total power of each base dimension.
+	 *
+	 * @return the dimension signature of this unit.
+	 */
+	public Dimension getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Creates a converter from this unit to another unit of the same quantity.
+	 * The conversion factor is calculated once so the converter can be applied to any number of values.
+	 *
+	 * @param to the unit to convert to.
+	 * @return a converter from this unit to the target unit.
+	 * @throws UnitMismatchException if this unit can't be converted to the target unit. (If they don't share the same quantity.)
+	 */
+	public Converter converterTo(U to) throws UnitMismatchException {
+		if (!isSameQuantity(to)) throw mismatch(this, to);
+		return new Converter(this, to);
+	}
+
+	/** Creates the exception thrown when unit a cannot be converted to unit b. */
+	static UnitMismatchException mismatch(U a, U b) {
+		return new UnitMismatchException(String.format("%s can not be converted to %s because they are not the same quantity. The difference is %s.",
+				  a, b, a.dimDiff(b)));
 	}
 
 	private boolean hasComponent(BU u) {
@@ -376,70 +509,62 @@ public class U { // Compound Unit
 		}
 		U u = (U) obj;
 
-		return this.dimDiff(u).components.size() == 0 && Util.compareDouble(this.getLength(), u.getLength()) == 0;
+		return this == u || (this.isSameQuantity(u) && Util.compareDouble(this.getLength(), u.getLength()) == 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only the quantity is hashed. Lengths are compared with a tolerance in {@link #equals(Object)} and can therefore not be part of the hash.
+	 */
+	@Override
+	public int hashCode() {
+		return dimension.hashCode();
+	}
+
+	double getCompoundLength() {
+		return compoundLength;
+	}
+
+	double getCompoundPower() {
+		return compoundPower;
+	}
+
+	String getShortCompoundName() {
+		return shortCompoundName;
+	}
+
+	String getLongCompoundName() {
+		return longCompoundName;
 	}
 
 	double getLength() {
-		double len = 1;
-		String s = "[";
-		s += String.format(" %f ", len);
-		for (BU u : components) {
-			len *= u.getLength();
-			s += String.format("(%s, %f)", u, u.getLength());
-			s += String.format(" %f ", len);
-		}
-		//System.out.println(s + "] " + compoundLength + " = " + (len * compoundLength));
-		return len * compoundLength;
+		return length;
 	}
 
-	double getOffset() {
-		double offset = 0;
-		for (BU u : components) {
-			offset += u.getOffset(); // Offset for compound units is not yet really defined. 
-		}
+	/**
+	 * Returns the offset of this unit, the value that is added to a value in this unit to count it from the zero of its quantity.
+	 * Only used by absolute conversion, such as {@link UV#convertAbsolute(U)}: x in unit a is (x + a.offset) * a.length / b.length - b.offset in unit b.
+	 * <p>
+	 * Only a scale, a unit of a single quantity to the power of 1 defined with an offset, has one. Compound units, including
+	 * powers and products of scales such as °C^2 or °C/s, have offset 0: in them, the scale measures a difference.
+	 * Ex: U.CELSIUS.getOffset() is 273.15 and U.CELSIUS.div(U.S).getOffset() is 0.
+	 *
+	 * @return the offset, in this unit.
+	 */
+	public double getOffset() {
 		return offset;
 	}
 
 	/**
-	 * Calculates and returns the most suitable unit to display a given UV in.
+	 * Calculates and returns the most suitable unit to display a given UV in, among the units of {@link UnitIndex#SI}.
 	 *
 	 * @param uv     the source unit vector you want the best unit for
 	 * @param target the target value of the numeric part.
 	 * @return the most suitable unit to display UV in.
 	 */
 	public static U getBestUnit(UV uv, double target) {
-		ArrayList<U> si = new ArrayList<U>(Arrays.asList(U.MM, U.CM, U.M,
-				  U.MM.pow(2), U.CM.pow(2), U.DM.pow(2), U.M.pow(2),
-				  U.ML, U.CC, U.L, U.M.pow(3),
-				  U.MS, U.S, U.MIN, U.H, U.DAY, U.WEEK, U.MONTH, U.YEAR,
-				  U.G, U.KG, U.TON,
-
-				  U.L.div(U.S), U.L.div(U.H), U.L.div(U.DAY),
-				  U.ML.div(U.S), U.ML.div(U.H), U.ML.div(U.DAY)));
-		U reduced = uv.unit().reduce();
-		ArrayList<U> correctQuantity = new ArrayList<U>(0); //List with all units of correct quantity
-		for (U u : si) {
-			if (u.isSameQuantity(reduced)) correctQuantity.add(u);
-		}
-		//Search the list of correct quantities for the unit which makes the value as close to 1 as possible
-		U closestLengthUnit = uv.unit(); //Default unit is the one we have to begin with
-		double closestLength = Double.MAX_VALUE;
-		try {
-			for (U u : correctQuantity) {
-				//The logarithm gives a smaller value the closer to 1 we are.
-				//We can divide the value in the abs to increase the number we want to get close to. 
-				//Dividing by 10 makes it so we're finding the closest to 10
-				double distance = Math.abs(Math.log(Math.abs(uv.convert(u).value() / target)));
-				if (distance < closestLength) {
-					closestLengthUnit = u;
-					closestLength = distance;
-				}
-			}
-		} catch (UnitMismatchException e) {
-			System.err.println("An appropriate unit could not be found. This error should never happen.");
-			e.printStackTrace();
-		}
-		return closestLengthUnit;
+		return UnitIndex.SI.getBestUnit(uv, target);
 	}
 	
 	/**
@@ -506,22 +631,24 @@ public class U { // Compound Unit
 	}
 
 	public String toString() {
-		String s = "";
+		String s = name;
+		if (s != null) return s;
 		if (!shortCompoundName.equals("")) {
 			if (compoundPower == 0) {
-				s = String.format("%s", shortCompoundName);
+				s = shortCompoundName;
 			} else if (compoundPower == 1) {
-				s = String.format("%s", shortCompoundName);
+				s = shortCompoundName;
 			} else if (compoundPower % 1 == 0){
 				s = String.format("%s^%.0f", shortCompoundName, compoundPower);
 			} else {
 				s = String.format("%s^%s", shortCompoundName, compoundPower);
 			}
 		} else {
-			s = String.format("%s", getDerivedName());
+			s = getDerivedName();
 		}
 		//return String.format("%s (%s)", s, getDerivedName());
-		return String.format("%s", s);
+		name = s; // Units are immutable, so racing threads compute the same name
+		return s;
 	}
 
 	String debugString() {
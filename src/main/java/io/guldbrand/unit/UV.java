@@ -12,6 +12,9 @@ package io.guldbrand.unit;
  */
 public class UV implements Comparable<UV> { // Unit Vector
 
+	/** Returned by {@link #compareChecked(UV)} when the unit values are not of the same quantity. */
+	public static final int INCOMPARABLE = Integer.MIN_VALUE;
+
 	private double value; // The value of this vector
 	private U unit;
 
@@ -32,26 +35,29 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @throws UnitMismatchException If this unit can't be converted to the target unit. (If they don't share the same quantity.)
 	 */
 	public UV convert(U to) throws UnitMismatchException {
-		if (!unit.isSameQuantity(to)) {
-			throw new UnitMismatchException(String.format("%s can not be converted to %s because they are not the same quantity. The difference is %s.",
-					  unit, to, unit.dimDiff(to)));
-		}
-		double a = unit.getLength();
-		double b = to.getLength();
-		//System.out.printf("Converting %s with l=%e to %s with l=%e.\n", this, a, new UV((this.value * a) / b, to), b);
-		return new UV((this.value * unit.getLength()) / to.getLength(), to);
+		return new UV(ConversionCache.DEFAULT.get(unit, to).apply(value), to);
+	}
+
+	/** Like {@link UV#convert(U to)} but returns null instead of throwing if the units are not of the same quantity.
+	 * No exception or message is created for a mismatch.
+	 * @param to the Unit to convert to.
+	 * @return a UnitValue with the same value as this one but expressed in a different unit, or null if this unit can't be converted to it.
+	 */
+	public UV tryConvert(U to) {
+		Converter c = ConversionCache.DEFAULT.find(unit, to);
+		return c != null ? new UV(c.apply(value), to) : null;
 	}
 	
 	/** Converts this unit while accounting for offset. Use this for converting between scales, such as X Fahrenheit into Y Celsius.
+	 * The conversion is a single multiplication and addition, see {@link Converter#applyAbsolute(double)}.
+	 * Units without an offset, including all compound units, convert like {@link #convert(U)}.
 	 * @param to the Unit to convert to.
 	 * @return a UV with the same value as this one but expressed in a different unit.
 	 *
 	 * @throws UnitMismatchException if this unit cannot be converted to the target one.
 	 */
 	public UV convertAbsolute(U to) throws UnitMismatchException {
-		UV result = this.convert(to);
-		result = result.add(new UV(unit.getOffset(), unit)).sub(new UV(to.getOffset(), to));
-		return result;
+		return new UV(ConversionCache.DEFAULT.get(unit, to).applyAbsolute(value), to);
 	}
 
 	/**
@@ -61,15 +67,23 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @throws UnitMismatchException if the Units of the UnitValues are not of the same Quantity.
 	 */
 	public UV add(UV uv) throws UnitMismatchException {
-		UV result;
-		if (unit.isSameQuantity(uv.unit)) {
-			result = new UV(value + uv.convert(unit).value, unit);
-		} else {
+		UV result = tryAdd(uv);
+		if (result == null) {
 			throw new UnitMismatchException(String.format("Tried adding %s to %s.", uv.unit, unit));
 		}
 		return result;
 	}
 
+	/**
+	 * Like {@link UV#add(UV uv)} but returns null instead of throwing if the Units are not of the same Quantity.
+	 * @param uv the UnitValue to add to this one.
+	 * @return a UnitValue representing the sum of this and the other UnitValue, or null if they can't be added.
+	 */
+	public UV tryAdd(UV uv) {
+		Converter c = ConversionCache.DEFAULT.find(uv.unit, unit);
+		return c != null ? new UV(value + c.apply(uv.value), unit) : null;
+	}
+
 	/** Like {@link UV#add(UV uv)} but the UnitValue to add is specified as a value and a Unit.*/
 	public UV add(double value, U u) throws UnitMismatchException {
 		return add(new UV(value, u));
@@ -85,6 +99,16 @@ public class UV implements Comparable<UV> { // Unit Vector
 		return add(uv.negate());
 	}
 
+	/**
+	 * Like {@link UV#sub(UV uv)} but returns null instead of throwing if the Units are not of the same Quantity.
+	 * @param uv the UnitValue to subtract from this one.
+	 * @return a UnitValue representing the difference of this and the other UnitValue, or null if they can't be subtracted.
+	 */
+	public UV trySub(UV uv) {
+		Converter c = ConversionCache.DEFAULT.find(uv.unit, unit);
+		return c != null ? new UV(value - c.apply(uv.value), unit) : null;
+	}
+
 	/** Like {@link UV#sub(UV uv)} but the UnitValue to subtract is specified as a value and a Unit.*/
 	public UV sub(double value, U u) throws UnitMismatchException {
 		return sub(new UV(value, u));
@@ -96,33 +120,8 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @return a UnitValue representing the product of this and the other UnitValue.
 	 */
 	public UV mul(UV uv) {
-		UV result = uv;
-		U resultUnit;
-
-		try {
-			if (unit.equals(U.NONE) && !uv.unit.equals(U.NONE)) { // This unit is NONE, result will have other unit.
-				unit = uv.unit;
-				resultUnit = uv.unit;
-				result = new UV(value * uv.convert(unit).value, resultUnit);
-			} else if (!unit.equals(U.NONE) && uv.unit.equals(U.NONE)) { // Other unit is NONE, result will have this unit.
-				uv.unit = unit;
-				resultUnit = unit;
-				result = new UV(value * uv.convert(unit).value, resultUnit);
-			} else {
-				resultUnit = unit.mul(uv.unit).reduce(); // As a side-effect, resultUnit has been converted to composite units.
-				U resultMe = resultUnit.div(uv.unit).reduce(); // this.unit but expressed in same composites as resultUnit
-				U resultThem = resultUnit.div(unit).reduce(); // uv.unit but expressed in same composites as resultUnit
-				result = new UV(this.convert(resultMe).value * uv.convert(resultThem).value, resultUnit);
-				//System.out.printf("Mul: %s * %s = %s. I am %s. They are %s. \n", this, uv, result, resultMe, resultThem);
-				if (unit.isSameQuantity(uv.unit)) {
-					result.convert(unit.pow(2));
-				}
-			}
-		} catch (UnitMismatchException e) {
-			System.err.format("[ERROR] %s and %s could not be multiplied and caused a UnitMismatchException.\n", this, uv);
-			e.printStackTrace();
-		}
-		return result;
+		AlgebraTable.Product product = unit.product(uv.unit);
+		return new UV(value * uv.value * product.factor, product.unit);
 	}
 
 	/** Like {@link UV#mul(UV uv)} but the UnitValue to multiply with is specified as a value and a Unit.*/
@@ -151,19 +150,17 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 */
 	public UV pow(double p) {
 		//System.out.println("Powering.");
+		if (p == 0) return new UV(1, U.NONE); // unit.pow(0) is dimensionless but may keep a compound name, and its root is not of this quantity
 		U u = this.unit.pow(p);
 		//System.out.println("UV pow: " + Arrays.toString(u.components.toArray()));
 		U root = u.pow(1.0/p);
 		//System.out.printf("Powering %s with length %e to %f. Unit will be %s with length %e and root is %s.\n",
 		//		  this, unit().getLength(), p, u, u.getLength(), root.getDerivedName());
-		UV result = null;
-		try {
-			result = new UV(Math.pow(this.convert(root).value, p), u);
-		} catch (UnitMismatchException e){
-			System.err.format("The power of %s could not be calculated. This means that the root of the powered unit could not be calculated. \n", this);
-			e.printStackTrace();
+		Converter c = ConversionCache.DEFAULT.find(unit, root);
+		if (c == null) {
+			throw new IllegalStateException(String.format("The root of %s to the power of %s is not of the same quantity as %s.", u, 1.0 / p, unit));
 		}
-		return result;
+		return new UV(Math.pow(c.apply(value), p), u);
 	}
 	
 	/** Invert this UnitValue. This will invert the value of this UnitValue and negate the exponent of its Unit.
@@ -202,11 +199,12 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @throws UnitMismatchException if units are not of the same quantity.
 	 */
 	public static UV max(UV a, UV b) throws UnitMismatchException {
-		if (!a.unit().isSameQuantity(b.unit())) {
+		int c = a.compareChecked(b);
+		if (c == INCOMPARABLE) {
 			throw new UnitMismatchException(String.format("%s can not be compared to %s because they are not the same quantity.", a, b));
 		}
 
-		if (a.compareTo(b) >= 0) {
+		if (c >= 0) {
 			return a;
 		} else {
 			return b;
@@ -222,11 +220,12 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @throws UnitMismatchException if units are not of the same quantity.
 	 */
 	public static UV min(UV a, UV b) throws UnitMismatchException {
-		if (!a.unit().isSameQuantity(b.unit())) {
+		int c = a.compareChecked(b);
+		if (c == INCOMPARABLE) {
 			throw new UnitMismatchException(String.format("%s can not be compared to %s because they are not the same quantity.", a, b));
 		}
 
-		if (a.compareTo(b) <= 0) {
+		if (c <= 0) {
 			return a;
 		} else {
 			return b;
@@ -272,26 +271,35 @@ public class UV implements Comparable<UV> { // Unit Vector
 		}
 		UV uv = (UV) obj;
 		
-		return compareTo(uv) == 0;
+		return compareChecked(uv) == 0; // Unit values of different quantities are never equal
 	}
 
 	/**
 	 * {@inheritDoc}
+	 *
+	 * @throws ClassCastException if the unit values are not of the same quantity. Use {@link #compareChecked(UV)} to avoid the exception.
 	 */
 	@Override
 	public int compareTo(UV uv) {
-		try {
-			// Make sure uv and this are the same quantity and convert so that values can be compared later.
-			uv = uv.convert(unit());
-		} catch (UnitMismatchException e) {
-			// CompareTo cannot cast exception. Have to be handled here.
-			System.err.format("[ERROR] %s and %s could not be compared because they are not the same quantity.\n", unit(), uv.unit());
-			e.printStackTrace();
-			return 0;
+		int c = compareChecked(uv);
+		if (c == INCOMPARABLE) {
+			throw new ClassCastException(String.format("%s and %s could not be compared because they are not the same quantity.", unit(), uv.unit()));
 		}
+		return c;
+	}
+
+	/**
+	 * Like {@link #compareTo(UV)} but returns {@link #INCOMPARABLE} instead of throwing if the unit values are not of the same quantity.
+	 *
+	 * @param uv the unit value to compare with.
+	 * @return -1, 0 or 1 as this unit value is less than, equal to or greater than uv, or INCOMPARABLE.
+	 */
+	public int compareChecked(UV uv) {
+		// Make sure uv and this are the same quantity and convert so that values can be compared.
+		Converter c = ConversionCache.DEFAULT.find(uv.unit, unit);
+		if (c == null) return INCOMPARABLE;
 		//System.out.printf("Comparing %s and %s. Values %.20f and %.20f. Lengths %e and %e.\n", this, uv, value(), uv.value(), unit().getLength(), uv.unit().getLength());
-		//System.out.println("CompareTo returning " + Util.compareDouble(value(), uv.value()));
-		return Util.compareDouble(value(), uv.value());
+		return Util.compareDouble(value(), c.apply(uv.value()));
 	}
 
 	/**
@@ -301,23 +309,24 @@ public class UV implements Comparable<UV> { // Unit Vector
 	 * @return the most appropriate unit for displaying this value.
 	 */
 	public UV convertAuto(double target) {
-		try {
-			return convert(U.getBestUnit(this, target));
-		} catch (UnitMismatchException e) {
-			System.err.println("This error can never happen.");
-			e.printStackTrace();
-			return this;
-		}
+		return convertAuto(target, UnitIndex.SI);
+	}
+
+	/**
+	 * Calculates and returns the unit most appropriate for displaying a given value, among the candidates of an index.
+	 *
+	 * @param target target value of the numeric part of this unit.
+	 * @param index the candidate units.
+	 * @return the most appropriate unit for displaying this value.
+	 */
+	public UV convertAuto(double target, UnitIndex index) {
+		UV result = tryConvert(index.getBestUnit(this, target)); // The best unit is always of the same quantity
+		return result != null ? result : this;
 	}
 
 	@Override
 	public String toString() {
-		double abs = Math.abs(value);
-		if (abs >= 10000) return String.format("%g %s", value, unit);
-		else if (abs >= 100) return String.format("%.0f %s", value, unit);
-		else if (abs >= 10) return String.format("%.1f %s", value, unit);
-		else if (abs >= 1) return String.format("%.2f %s", value, unit);
-		else return String.format("%.2g %s", value, unit);
+		return UVFormat.DEFAULT.format(this);
 	}
 
 }
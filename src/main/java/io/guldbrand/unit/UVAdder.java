@@ -0,0 +1,124 @@
+package io.guldbrand.unit;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Sum of unit values updated by many threads, such as the total distance or mass processed.
+ * <p>
+ * Increments are converted to the unit of the adder and added to a {@link DoubleAdder}, which spreads contended updates
+ * over several cells. Reading sums the cells. Converters come from the lock-free {@link ConversionCache}, and the adder
+ * keeps no shared state of its own, so threads adding in different units do not contend on anything but the cells.
+ * <p>
+ * An optional soft cap is checked when the sum is read, not when it is updated. Unlike {@link AtomicStatUV},
+ * increments are never clamped, so the sum may pass the cap.
+ */
+public class UVAdder {
+
+	private final U unit;
+	private final double cap; // Soft cap, in unit. Infinite if none.
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * Creates an adder without a cap.
+	 *
+	 * @param unit the unit of the sum.
+	 */
+	public UVAdder(U unit) {
+		this(unit, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Creates an adder with a soft cap.
+	 *
+	 * @param unit the unit of the sum.
+	 * @param cap the largest sum reported by {@link #sumCapped()}, in unit.
+	 */
+	public UVAdder(U unit, double cap) {
+		this.unit = unit;
+		this.cap = cap;
+	}
+
+	/**
+	 * Adds a value in the unit of this adder.
+	 *
+	 * @param value the value to add.
+	 */
+	public void add(double value) {
+		sum.add(value);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value the value to add.
+	 * @param u the unit of the value.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this adder.
+	 */
+	public void add(double value, U u) throws UnitMismatchException {
+		sum.add(u == unit ? value : ConversionCache.DEFAULT.get(u, unit).apply(value));
+	}
+
+	/** Like {@link #add(double, U)} but the value is specified as a unit value. */
+	public void add(UV uv) throws UnitMismatchException {
+		add(uv.value(), uv.unit());
+	}
+
+	/**
+	 * Returns the current sum. Increments made while the sum is read may or may not be included.
+	 * @return the sum, in the unit of this adder.
+	 */
+	public UV sum() {
+		return new UV(sum.sum(), unit);
+	}
+
+	/**
+	 * Returns the current sum, limited to the cap.
+	 * @return the sum or the cap, whichever is smaller, in the unit of this adder.
+	 */
+	public UV sumCapped() {
+		return new UV(Math.min(sum.sum(), cap), unit);
+	}
+
+	/**
+	 * Returns whether the sum has passed the cap.
+	 * @return true iff the current sum is greater than the cap.
+	 */
+	public boolean isExceeded() {
+		return sum.sum() > cap;
+	}
+
+	/**
+	 * Returns the current sum and resets it to 0. Not atomic, increments made meanwhile may be lost.
+	 * @return the sum before the reset, in the unit of this adder.
+	 */
+	public UV sumThenReset() {
+		return new UV(sum.sumThenReset(), unit);
+	}
+
+	/** Resets the sum to 0. Only reliable when no increments are made meanwhile. */
+	public void reset() {
+		sum.reset();
+	}
+
+	/**
+	 * Returns the unit of this adder.
+	 * @return the unit of the sum.
+	 */
+	public U getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the soft cap.
+	 * @return the cap, in the unit of this adder. Infinity if there is none.
+	 */
+	public UV getCap() {
+		return new UV(cap, unit);
+	}
+
+	@Override
+	public String toString() {
+		return sum().toString();
+	}
+
+}
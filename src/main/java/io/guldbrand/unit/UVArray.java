@@ -0,0 +1,380 @@
+package io.guldbrand.unit;
+
+import java.util.Arrays;
+
+/**
+ * Unit Value Array, a series of values sharing one compound unit.
+ * <p>
+ * The values are stored in a primitive double array, so a series of measurements costs 8 bytes per value instead of one
+ * {@link UV} object per value. Arithmetic works like it does on {@link UV}, but units are checked and conversion factors
+ * are calculated once per call, after which the values are processed in a plain loop.
+ * <p>
+ * An array can be a view of a range of another array. Views share their values with the array they were created from,
+ * so {@link #set(int, double)} on one is visible in the other. Arithmetic never modifies its operands but returns new arrays.
+ */
+public final class UVArray {
+
+	final double[] values;
+	final int offset; // Index in values of the first value of this array
+	final int length;
+	private final U unit;
+
+	/**
+	 * Creates an array of zeros.
+	 *
+	 * @param length the number of values.
+	 * @param unit the unit of all values.
+	 */
+	public UVArray(int length, U unit) {
+		this(new double[length], unit);
+	}
+
+	/**
+	 * Creates an array backed by the given values. The values are not copied.
+	 *
+	 * @param values the values of this array.
+	 * @param unit the unit of all values.
+	 */
+	public UVArray(double[] values, U unit) {
+		this(values, 0, values.length, unit);
+	}
+
+	/**
+	 * Creates an array backed by a range of the given values. The values are not copied.
+	 *
+	 * @param values the array holding the values of this array.
+	 * @param offset the index in values of the first value.
+	 * @param length the number of values.
+	 * @param unit the unit of all values.
+	 */
+	public UVArray(double[] values, int offset, int length, U unit) {
+		if (offset < 0 || length < 0 || offset + length > values.length) {
+			throw new ArrayIndexOutOfBoundsException(String.format("Range [%d, %d) is outside of %d values.", offset, offset + length, values.length));
+		}
+		this.values = values;
+		this.offset = offset;
+		this.length = length;
+		this.unit = unit;
+	}
+
+	/**
+	 * Creates an array holding a copy of the given values.
+	 *
+	 * @param unit the unit of all values.
+	 * @param values the values.
+	 * @return an array with the given values.
+	 */
+	public static UVArray of(U unit, double... values) {
+		return new UVArray(values.clone(), unit);
+	}
+
+	/**
+	 * Returns the unit of the values of this array.
+	 * @return the unit of the values of this array.
+	 */
+	public U unit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the number of values in this array.
+	 * @return the number of values in this array.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Returns a value in the unit of this array.
+	 *
+	 * @param i the index of the value.
+	 * @return the value at index i.
+	 */
+	public double value(int i) {
+		return values[index(i)];
+	}
+
+	/**
+	 * Returns a value as a unit value.
+	 *
+	 * @param i the index of the value.
+	 * @return the value at index i together with the unit of this array.
+	 */
+	public UV get(int i) {
+		return new UV(value(i), unit);
+	}
+
+	/**
+	 * Sets a value.
+	 *
+	 * @param i the index of the value.
+	 * @param value the new value, in the unit of this array.
+	 */
+	public void set(int i, double value) {
+		values[index(i)] = value;
+	}
+
+	/**
+	 * Sets a value, converting it to the unit of this array.
+	 *
+	 * @param i the index of the value.
+	 * @param uv the new value.
+	 * @throws UnitMismatchException if the unit value can't be converted to the unit of this array.
+	 */
+	public void set(int i, UV uv) throws UnitMismatchException {
+		set(i, ConversionCache.DEFAULT.get(uv.unit(), unit).apply(uv.value()));
+	}
+
+	/**
+	 * Returns a view of a range of this array. The values are not copied.
+	 *
+	 * @param from the first index of the view, inclusive.
+	 * @param to the last index of the view, exclusive.
+	 * @return an array sharing its values with this array.
+	 */
+	public UVArray slice(int from, int to) {
+		if (from < 0 || to > length || from > to) {
+			throw new ArrayIndexOutOfBoundsException(String.format("Slice [%d, %d) is outside of %d values.", from, to, length));
+		}
+		return new UVArray(values, offset + from, to - from, unit);
+	}
+
+	/**
+	 * Returns the values of this array in a new double array.
+	 * @return a copy of the values of this array.
+	 */
+	public double[] toArray() {
+		return Arrays.copyOfRange(values, offset, offset + length);
+	}
+
+	/**
+	 * Copies the values of this array into a double array.
+	 *
+	 * @param dst the array to copy to.
+	 * @param dstPos the index in dst of the first value.
+	 */
+	public void copyTo(double[] dst, int dstPos) {
+		System.arraycopy(values, offset, dst, dstPos, length);
+	}
+
+	/** Converts every value of this array to another unit. Same as {@link UV#convert(U)}.
+	 *
+	 * @param to the Unit to convert to.
+	 * @return an array with the same values as this one but expressed in a different unit.
+	 * @throws UnitMismatchException If this unit can't be converted to the target unit. (If they don't share the same quantity.)
+	 */
+	public UVArray convert(U to) throws UnitMismatchException {
+		double[] result = new double[length];
+		ConversionCache.DEFAULT.get(unit, to).apply(values, offset, result, 0, length);
+		return new UVArray(result, to);
+	}
+
+	/** Converts every value of this array while accounting for offset. Same as {@link UV#convertAbsolute(U)}.
+	 *
+	 * @param to the Unit to convert to.
+	 * @return an array with the same values as this one but expressed in a different unit.
+	 * @throws UnitMismatchException if this unit cannot be converted to the target one.
+	 */
+	public UVArray convertAbsolute(U to) throws UnitMismatchException {
+		double[] result = new double[length];
+		ConversionCache.DEFAULT.get(unit, to).applyAbsolute(values, offset, result, 0, length);
+		return new UVArray(result, to);
+	}
+
+	/**
+	 * Adds the values of another array to the values of this one, element by element.
+	 *
+	 * @param a the array to add. Must have the same length as this one.
+	 * @return an array of the sums, in the unit of this array.
+	 * @throws UnitMismatchException if the units of the arrays are not of the same quantity.
+	 */
+	public UVArray add(UVArray a) throws UnitMismatchException {
+		checkLength(a);
+		double f = ConversionCache.DEFAULT.get(a.unit, unit).factor();
+		double[] result = new double[length];
+		Kernels.add(values, offset, a.values, a.offset, result, 0, length, f);
+		return new UVArray(result, unit);
+	}
+
+	/**
+	 * Adds a unit value to every value of this array.
+	 *
+	 * @param uv the unit value to add.
+	 * @return an array of the sums, in the unit of this array.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 */
+	public UVArray add(UV uv) throws UnitMismatchException {
+		double term = ConversionCache.DEFAULT.get(uv.unit(), unit).apply(uv.value());
+		double[] result = new double[length];
+		Kernels.affine(values, offset, result, 0, length, 1, term);
+		return new UVArray(result, unit);
+	}
+
+	/**
+	 * Subtracts the values of another array from the values of this one, element by element.
+	 *
+	 * @param a the array to subtract. Must have the same length as this one.
+	 * @return an array of the differences, in the unit of this array.
+	 * @throws UnitMismatchException if the units of the arrays are not of the same quantity.
+	 */
+	public UVArray sub(UVArray a) throws UnitMismatchException {
+		checkLength(a);
+		double f = ConversionCache.DEFAULT.get(a.unit, unit).factor();
+		double[] result = new double[length];
+		Kernels.sub(values, offset, a.values, a.offset, result, 0, length, f);
+		return new UVArray(result, unit);
+	}
+
+	/**
+	 * Subtracts a unit value from every value of this array.
+	 *
+	 * @param uv the unit value to subtract.
+	 * @return an array of the differences, in the unit of this array.
+	 * @throws UnitMismatchException if the units are not of the same quantity.
+	 */
+	public UVArray sub(UV uv) throws UnitMismatchException {
+		return add(uv.negate());
+	}
+
+	/**
+	 * Multiplies the values of this array with the values of another, element by element. Same as {@link UV#mul(UV)}.
+	 *
+	 * @param a the array to multiply with. Must have the same length as this one.
+	 * @return an array of the products.
+	 */
+	public UVArray mul(UVArray a) {
+		checkLength(a);
+		AlgebraTable.Product product = unit.product(a.unit);
+		double f = product.factor;
+		double[] result = new double[length];
+		Kernels.mul(values, offset, a.values, a.offset, result, 0, length, f);
+		return new UVArray(result, product.unit);
+	}
+
+	/**
+	 * Multiplies every value of this array with a unit value.
+	 *
+	 * @param uv the unit value to multiply with.
+	 * @return an array of the products.
+	 */
+	public UVArray mul(UV uv) {
+		AlgebraTable.Product product = unit.product(uv.unit());
+		double f = uv.value() * product.factor;
+		double[] result = new double[length];
+		Kernels.scale(values, offset, result, 0, length, f);
+		return new UVArray(result, product.unit);
+	}
+
+	/**
+	 * Divides the values of this array with the values of another, element by element. Same as {@link UV#div(UV)}.
+	 *
+	 * @param a the array to divide by. Must have the same length as this one.
+	 * @return an array of the quotients.
+	 */
+	public UVArray div(UVArray a) {
+		checkLength(a);
+		AlgebraTable.Product product = unit.product(a.unit.inverse());
+		double f = product.factor;
+		double[] result = new double[length];
+		Kernels.div(values, offset, a.values, a.offset, result, 0, length, f);
+		return new UVArray(result, product.unit);
+	}
+
+	/**
+	 * Divides every value of this array with a unit value.
+	 *
+	 * @param uv the unit value to divide by.
+	 * @return an array of the quotients.
+	 */
+	public UVArray div(UV uv) {
+		return mul(uv.inverse());
+	}
+
+	/**
+	 * Raises every value of this array to a power. Same as {@link UV#pow(double)}.
+	 *
+	 * @param p the exponent.
+	 * @return an array of the powers.
+	 */
+	public UVArray pow(double p) {
+		if (p == 0) {
+			double[] ones = new double[length];
+			Arrays.fill(ones, 1);
+			return new UVArray(ones, U.NONE);
+		}
+		U u = unit.pow(p);
+		U root = u.pow(1.0 / p);
+		double f = new Converter(unit, root).factor(); // root has the quantity of unit by construction
+		double[] result = new double[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = Math.pow(values[offset + i] * f, p);
+		}
+		return new UVArray(result, u);
+	}
+
+	/**
+	 * Calculates the sum of all values.
+	 * @return the sum of all values, in the unit of this array.
+	 */
+	public UV sum() {
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += values[offset + i];
+		}
+		return new UV(sum, unit);
+	}
+
+	/**
+	 * Calculates the smallest value.
+	 * @return the smallest value, in the unit of this array. NaN if the array is empty.
+	 */
+	public UV min() {
+		double min = length == 0 ? Double.NaN : Double.POSITIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			min = Math.min(min, values[offset + i]);
+		}
+		return new UV(min, unit);
+	}
+
+	/**
+	 * Calculates the largest value.
+	 * @return the largest value, in the unit of this array. NaN if the array is empty.
+	 */
+	public UV max() {
+		double max = length == 0 ? Double.NaN : Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < length; i++) {
+			max = Math.max(max, values[offset + i]);
+		}
+		return new UV(max, unit);
+	}
+
+	/**
+	 * Calculates the arithmetic mean of all values.
+	 * @return the mean of all values, in the unit of this array. NaN if the array is empty.
+	 */
+	public UV mean() {
+		return new UV(sum().value() / length, unit);
+	}
+
+	void checkLength(UVArray a) {
+		if (a.length != length) {
+			throw new IllegalArgumentException(String.format("Arrays of different length: %d and %d.", length, a.length));
+		}
+	}
+
+	private int index(int i) {
+		if (i < 0 || i >= length) throw new ArrayIndexOutOfBoundsException(i);
+		return offset + i;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("[");
+		for (int i = 0; i < length; i++) {
+			if (i > 0) s.append(", ");
+			s.append(get(i));
+		}
+		return s.append("]").toString();
+	}
+
+}
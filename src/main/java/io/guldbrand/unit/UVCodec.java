@@ -0,0 +1,230 @@
+package io.guldbrand.unit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compact binary encoding of unit values.
+ * <p>
+ * Units are written once, in a {@link UnitTable}, and values refer to them by id. A single value is written as its unit id
+ * (an unsigned short) followed by the value (a double). A column, a {@link UVArray}, is written as its unit id and length
+ * followed by its values, copied in bulk without creating an object per value. Values are written bit for bit, so unlike
+ * {@link UV#toString()}, nothing is lost.
+ * <p>
+ * Files written with {@link #write(WritableByteChannel, UVArray...)} have this layout, in {@link #ORDER}:
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * int     size of the unit table in bytes
+ * byte[]  unit table, padded with zeros to a multiple of 8 bytes from the start of the file
+ * long    number of columns
+ * columns:
+ *   int     unit id
+ *   int     0
+ *   long    number of values
+ *   double[] values
+ * </pre>
+ * Every column starts at a multiple of 8 bytes, so the values of a file can be mapped into memory and read in place.
+ */
+public final class UVCodec {
+
+	/** The first four bytes of a file, "UVC1" in ASCII when read as a big-endian int. */
+	public static final int MAGIC = 0x55564331;
+	/** The version of the file layout. */
+	public static final int VERSION = 1;
+	/** The byte order of files. Little-endian, the native order of most hardware, so that mapped files can be read in place. */
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	static final int FILE_HEADER_SIZE = 12; // Magic, version and table size
+	static final int COLUMN_HEADER_SIZE = 16; // Unit id, padding and length
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private UVCodec() {
+	}
+
+	/**
+	 * Writes a unit value as a unit id and a double. The unit is added to the table if it is not in it.
+	 *
+	 * @param buf the buffer to write to, in its byte order.
+	 * @param table the unit table of the buffer.
+	 * @param uv the unit value.
+	 */
+	public static void putUV(ByteBuffer buf, UnitTable table, UV uv) {
+		buf.putShort((short) table.id(uv.unit()));
+		buf.putDouble(uv.value());
+	}
+
+	/**
+	 * Reads a unit value written by {@link #putUV(ByteBuffer, UnitTable, UV)}.
+	 *
+	 * @param buf the buffer to read from, in its byte order.
+	 * @param table the unit table of the buffer.
+	 * @return the unit value.
+	 */
+	public static UV getUV(ByteBuffer buf, UnitTable table) {
+		U u = table.get(buf.getShort() & 0xFFFF);
+		return new UV(buf.getDouble(), u);
+	}
+
+	/**
+	 * Writes a column of values as a unit id, a length and the values. The unit is added to the table if it is not in it.
+	 *
+	 * @param buf the buffer to write to, in its byte order.
+	 * @param table the unit table of the buffer.
+	 * @param column the values.
+	 * @throws java.nio.BufferOverflowException if the column does not fit in the buffer.
+	 */
+	public static void putColumn(ByteBuffer buf, UnitTable table, UVArray column) {
+		buf.putInt(table.id(column.unit())).putInt(0).putLong(column.length);
+		buf.asDoubleBuffer().put(column.values, column.offset, column.length);
+		buf.position(buf.position() + 8 * column.length);
+	}
+
+	/**
+	 * Reads a column written by {@link #putColumn(ByteBuffer, UnitTable, UVArray)}.
+	 *
+	 * @param buf the buffer to read from, in its byte order.
+	 * @param table the unit table of the buffer.
+	 * @return a new array with the values of the column.
+	 * @throws IOException if the column header is invalid.
+	 * @throws BufferUnderflowException if the column is truncated.
+	 */
+	public static UVArray getColumn(ByteBuffer buf, UnitTable table) throws IOException {
+		U u = unit(table, buf.getInt());
+		buf.getInt();
+		double[] values = new double[length(buf.getLong())];
+		buf.asDoubleBuffer().get(values);
+		buf.position(buf.position() + 8 * values.length);
+		return new UVArray(values, u);
+	}
+
+	/**
+	 * Writes columns of values to a channel, such as a {@link java.nio.channels.FileChannel}, with a unit table header.
+	 *
+	 * @param ch the channel to write to.
+	 * @param columns the columns to write.
+	 * @throws IOException if writing fails.
+	 */
+	public static void write(WritableByteChannel ch, UVArray... columns) throws IOException {
+		UnitTable table = new UnitTable();
+		for (UVArray column : columns) table.id(column.unit());
+
+		writeFully(ch, header(table, columns.length));
+
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ORDER);
+		for (UVArray column : columns) {
+			chunk.putInt(table.id(column.unit())).putInt(0).putLong(column.length);
+			for (int i = 0; i < column.length; ) {
+				int n = Math.min(column.length - i, chunk.remaining() / 8);
+				chunk.asDoubleBuffer().put(column.values, column.offset + i, n);
+				chunk.position(chunk.position() + 8 * n);
+				i += n;
+				if (chunk.remaining() < 8) {
+					chunk.flip();
+					writeFully(ch, chunk);
+					chunk.clear();
+				}
+			}
+			if (chunk.remaining() < COLUMN_HEADER_SIZE) {
+				chunk.flip();
+				writeFully(ch, chunk);
+				chunk.clear();
+			}
+		}
+		chunk.flip();
+		writeFully(ch, chunk);
+	}
+
+	/**
+	 * Reads columns written by {@link #write(WritableByteChannel, UVArray...)}.
+	 *
+	 * @param ch the channel to read from.
+	 * @return the columns.
+	 * @throws IOException if reading fails or the data is not a valid file.
+	 */
+	public static UVArray[] read(ReadableByteChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ORDER);
+		readFully(ch, header);
+		int tableSize = checkHeader(header);
+
+		ByteBuffer tableBuffer = ByteBuffer.allocate(align(FILE_HEADER_SIZE + tableSize) - FILE_HEADER_SIZE + 8).order(ORDER);
+		readFully(ch, tableBuffer);
+		UnitTable table = UnitTable.readFrom(tableBuffer);
+		tableBuffer.position(tableBuffer.limit() - 8);
+		long count = tableBuffer.getLong();
+		if (count < 0 || count > Integer.MAX_VALUE) throw new IOException("Invalid number of columns: " + count);
+
+		UVArray[] columns = new UVArray[(int) count];
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ORDER);
+		for (int c = 0; c < columns.length; c++) {
+			chunk.clear().limit(COLUMN_HEADER_SIZE);
+			readFully(ch, chunk);
+			U u = unit(table, chunk.getInt(0));
+			double[] values = new double[length(chunk.getLong(8))];
+			for (int i = 0; i < values.length; ) {
+				int n = Math.min(values.length - i, CHUNK_SIZE / 8);
+				chunk.clear().limit(8 * n);
+				readFully(ch, chunk);
+				chunk.asDoubleBuffer().get(values, i, n);
+				i += n;
+			}
+			columns[c] = new UVArray(values, u);
+		}
+		return columns;
+	}
+
+	/** Creates the file header: magic, version, unit table and number of columns, ready to be written. */
+	static ByteBuffer header(UnitTable table, long columns) {
+		int tableSize = table.encodedSize();
+		ByteBuffer header = ByteBuffer.allocate(align(FILE_HEADER_SIZE + tableSize) + 8).order(ORDER);
+		header.putInt(MAGIC).putInt(VERSION).putInt(tableSize);
+		table.writeTo(header);
+		header.position(align(header.position()));
+		header.putLong(columns);
+		header.flip();
+		return header;
+	}
+
+	/** Checks the magic number and version of a file. Returns the size of the unit table. */
+	static int checkHeader(ByteBuffer header) throws IOException {
+		if (header.getInt(0) != MAGIC) throw new IOException("Not a unit value file.");
+		if (header.getInt(4) != VERSION) throw new IOException("Unsupported version: " + header.getInt(4));
+		int tableSize = header.getInt(8);
+		if (tableSize < 4) throw new IOException("Invalid unit table size: " + tableSize);
+		return tableSize;
+	}
+
+	static U unit(UnitTable table, int id) throws IOException {
+		if (id < 0 || id >= table.size()) throw new IOException("Invalid unit id: " + id);
+		return table.get(id);
+	}
+
+	static int length(long length) throws IOException {
+		if (length < 0 || length > Integer.MAX_VALUE - 8) throw new IOException("Invalid column length: " + length);
+		return (int) length;
+	}
+
+	/** Rounds up to a multiple of 8. */
+	static int align(int position) {
+		return (position + 7) & ~7;
+	}
+
+	static void writeFully(WritableByteChannel ch, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+	}
+
+	static void readFully(ReadableByteChannel ch, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (ch.read(buf) < 0) throw new EOFException("Unexpected end of unit value file.");
+		}
+		buf.flip();
+	}
+
+}
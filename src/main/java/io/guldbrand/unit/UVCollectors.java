@@ -0,0 +1,134 @@
+package io.guldbrand.unit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Collector}s for streams of unit values.
+ * <p>
+ * Values are converted into a target unit and accumulated in plain doubles by {@link UVSummaryStatistics}, without creating
+ * a UV per value or an exception per mismatch. All collectors can be used with parallel streams.
+ * <p>
+ * Ex: values.stream().collect(UVCollectors.summing(U.KM))
+ */
+public final class UVCollectors {
+
+	/** What to do with values that are not of the same quantity as the target unit. */
+	public enum MismatchPolicy {
+		/** Throw an IllegalArgumentException, which ends the stream operation. */
+		FAIL,
+		/** Leave the value out. The number of skipped values is counted by {@link UVSummaryStatistics#getSkipped()}. */
+		SKIP
+	}
+
+	private UVCollectors() {
+	}
+
+	/**
+	 * Sums unit values. Values of other quantities than the target unit fail the stream operation.
+	 *
+	 * @param target the unit of the sum.
+	 * @return a collector summing unit values.
+	 */
+	public static Collector<UV, ?, UV> summing(U target) {
+		return summing(target, MismatchPolicy.FAIL);
+	}
+
+	/**
+	 * Sums unit values.
+	 *
+	 * @param target the unit of the sum.
+	 * @param policy what to do with values of other quantities than the target unit.
+	 * @return a collector summing unit values.
+	 */
+	public static Collector<UV, ?, UV> summing(U target, MismatchPolicy policy) {
+		UVSummaryStatistics.check(target, policy);
+		return Collector.of(() -> new UVSummaryStatistics(target, policy), UVSummaryStatistics::accept,
+				  UVSummaryStatistics::combine, UVSummaryStatistics::getSum);
+	}
+
+	/**
+	 * Averages unit values. Values of other quantities than the target unit fail the stream operation.
+	 *
+	 * @param target the unit of the average.
+	 * @return a collector averaging unit values. The average of no values is NaN.
+	 */
+	public static Collector<UV, ?, UV> averaging(U target) {
+		return averaging(target, MismatchPolicy.FAIL);
+	}
+
+	/**
+	 * Averages unit values.
+	 *
+	 * @param target the unit of the average.
+	 * @param policy what to do with values of other quantities than the target unit.
+	 * @return a collector averaging unit values. The average of no values is NaN.
+	 */
+	public static Collector<UV, ?, UV> averaging(U target, MismatchPolicy policy) {
+		UVSummaryStatistics.check(target, policy);
+		return Collector.of(() -> new UVSummaryStatistics(target, policy), UVSummaryStatistics::accept,
+				  UVSummaryStatistics::combine, UVSummaryStatistics::getAverage);
+	}
+
+	/**
+	 * Collects count, sum, minimum, maximum and average of unit values in the unit of the first value.
+	 * Values of other quantities fail the stream operation.
+	 *
+	 * @return a collector of summary statistics.
+	 */
+	public static Collector<UV, ?, UVSummaryStatistics> summarizing() {
+		return summarizing(null, MismatchPolicy.FAIL);
+	}
+
+	/**
+	 * Collects count, sum, minimum, maximum and average of unit values.
+	 * Values of other quantities than the target unit fail the stream operation.
+	 *
+	 * @param target the unit of the statistics.
+	 * @return a collector of summary statistics.
+	 */
+	public static Collector<UV, ?, UVSummaryStatistics> summarizing(U target) {
+		return summarizing(target, MismatchPolicy.FAIL);
+	}
+
+	/**
+	 * Collects count, sum, minimum, maximum and average of unit values.
+	 *
+	 * @param target the unit of the statistics, or null for the unit of the first value.
+	 * @param policy what to do with values of other quantities than the target unit.
+	 * @return a collector of summary statistics.
+	 * @throws IllegalArgumentException if the target is null and the policy is SKIP. The quantity to keep would depend on
+	 * how a parallel stream is split.
+	 */
+	public static Collector<UV, ?, UVSummaryStatistics> summarizing(U target, MismatchPolicy policy) {
+		UVSummaryStatistics.check(target, policy);
+		return Collector.of(() -> new UVSummaryStatistics(target, policy), UVSummaryStatistics::accept,
+				  UVSummaryStatistics::combine, Collector.Characteristics.IDENTITY_FINISH);
+	}
+
+	/**
+	 * Groups unit values by quantity.
+	 *
+	 * @return a collector of the values of each dimension signature.
+	 */
+	public static Collector<UV, ?, Map<Dimension, List<UV>>> groupingByDimension() {
+		return groupingByDimension(Collectors.toList());
+	}
+
+	/**
+	 * Groups unit values by quantity and reduces each group with another collector.
+	 * <p>
+	 * Ex: values.stream().collect(UVCollectors.groupingByDimension(UVCollectors.summarizing())) gives statistics of every quantity.
+	 *
+	 * @param downstream the collector reducing the values of each group.
+	 * @param <A> the accumulation type of the downstream collector.
+	 * @param <D> the result type of the downstream collector.
+	 * @return a collector of the reduced values of each dimension signature.
+	 */
+	public static <A, D> Collector<UV, ?, Map<Dimension, D>> groupingByDimension(Collector<? super UV, A, D> downstream) {
+		return Collectors.groupingBy(uv -> uv.unit().getDimension(), downstream);
+	}
+
+}
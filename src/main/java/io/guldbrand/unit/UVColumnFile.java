@@ -0,0 +1,390 @@
+package io.guldbrand.unit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File of values in one unit, read through memory mapping, for columns too large for the heap.
+ * <p>
+ * The file is a {@link UVCodec} file with a single column: a header with the definition of the unit, followed by the values
+ * as raw doubles. Values are read straight from the mapped file. The aggregate and conversion methods run over the mapped
+ * region without copying it and without creating an object per value. Files larger than 2 GB are mapped in segments.
+ * <p>
+ * Values can be appended. The length in the header is updated after the values are written, so a reader never sees
+ * values that are only partly written.
+ * <p>
+ * Ex: try (UVColumnFile f = UVColumnFile.create(path, U.KG)) { f.append(readings); UV total = f.sum(); }
+ * <p>
+ * Not thread-safe.
+ */
+public final class UVColumnFile implements Closeable {
+
+	static final int SEGMENT_VALUES = 1 << 27; // 1 GB per mapped segment
+
+	private final FileChannel channel;
+	private final U unit;
+	private final long dataStart; // File position of the first value
+	private final int segmentValues;
+
+	private long length;
+	private DoubleBuffer[] segments = new DoubleBuffer[0]; // Mapped lazily. The last one may be mapped shorter than the file.
+	private final ByteBuffer scratch = ByteBuffer.allocateDirect(64 * 1024).order(UVCodec.ORDER); // For appends
+
+	private UVColumnFile(FileChannel channel, U unit, long dataStart, long length, int segmentValues) {
+		this.channel = channel;
+		this.unit = unit;
+		this.dataStart = dataStart;
+		this.length = length;
+		this.segmentValues = segmentValues;
+	}
+
+	/**
+	 * Creates a new, empty file. An existing file is overwritten.
+	 *
+	 * @param path the file.
+	 * @param unit the unit of the values.
+	 * @return the file, open for reading and appending.
+	 * @throws IOException if the file cannot be created.
+	 */
+	public static UVColumnFile create(Path path, U unit) throws IOException {
+		return create(path, unit, SEGMENT_VALUES);
+	}
+
+	static UVColumnFile create(Path path, U unit, int segmentValues) throws IOException {
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				  StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			UnitTable table = new UnitTable();
+			table.id(unit);
+			ByteBuffer header = UVCodec.header(table, 1);
+			ByteBuffer column = ByteBuffer.allocate(UVCodec.COLUMN_HEADER_SIZE).order(UVCodec.ORDER);
+			column.putInt(0).putInt(0).putLong(0).flip();
+			long dataStart = header.remaining() + UVCodec.COLUMN_HEADER_SIZE;
+			UVCodec.writeFully(ch, header);
+			UVCodec.writeFully(ch, column);
+			return new UVColumnFile(ch, table.get(0), dataStart, 0, segmentValues);
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing file.
+	 *
+	 * @param path the file.
+	 * @param writable true to allow appending.
+	 * @return the file.
+	 * @throws IOException if the file cannot be read or is not a single column file.
+	 */
+	public static UVColumnFile open(Path path, boolean writable) throws IOException {
+		return open(path, writable, SEGMENT_VALUES);
+	}
+
+	static UVColumnFile open(Path path, boolean writable, int segmentValues) throws IOException {
+		FileChannel ch = writable ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(UVCodec.FILE_HEADER_SIZE).order(UVCodec.ORDER);
+			UVCodec.readFully(ch, header);
+			int tableSize = UVCodec.checkHeader(header);
+			int tableEnd = UVCodec.align(UVCodec.FILE_HEADER_SIZE + tableSize);
+			ByteBuffer rest = ByteBuffer.allocate(tableEnd - UVCodec.FILE_HEADER_SIZE + 8 + UVCodec.COLUMN_HEADER_SIZE).order(UVCodec.ORDER);
+			UVCodec.readFully(ch, rest);
+			UnitTable table = UnitTable.readFrom(rest);
+			rest.position(tableEnd - UVCodec.FILE_HEADER_SIZE);
+			if (rest.getLong() != 1) throw new IOException("Not a single column file.");
+			U u = UVCodec.unit(table, rest.getInt());
+			rest.getInt();
+			long length = rest.getLong();
+			long dataStart = tableEnd + 8 + UVCodec.COLUMN_HEADER_SIZE;
+			if (length < 0 || dataStart + 8 * length > ch.size()) throw new IOException("Invalid column length: " + length);
+			return new UVColumnFile(ch, u, dataStart, length, segmentValues);
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the unit of the values.
+	 * @return the unit of the values.
+	 */
+	public U unit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the number of values.
+	 * @return the number of values.
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Appends values.
+	 *
+	 * @param values the values, in the unit of this file.
+	 * @param offset the index of the first value to append.
+	 * @param n the number of values to append.
+	 * @throws IOException if writing fails.
+	 */
+	public void append(double[] values, int offset, int n) throws IOException {
+		if (offset < 0 || n < 0 || offset + n > values.length) throw new ArrayIndexOutOfBoundsException(offset + n);
+		long position = dataStart + 8 * length;
+		for (int i = 0; i < n; ) {
+			int m = Math.min(n - i, scratch.capacity() / 8);
+			scratch.clear();
+			scratch.asDoubleBuffer().put(values, offset + i, m);
+			scratch.limit(8 * m);
+			position = writeFully(scratch, position);
+			i += m;
+		}
+		setLength(length + n);
+	}
+
+	/**
+	 * Appends values.
+	 *
+	 * @param values the values, in the unit of this file.
+	 * @throws IOException if writing fails.
+	 */
+	public void append(double... values) throws IOException {
+		append(values, 0, values.length);
+	}
+
+	/**
+	 * Appends the values of an array, converted to the unit of this file.
+	 *
+	 * @param values the values to append.
+	 * @throws IOException if writing fails.
+	 * @throws UnitMismatchException if the values are not of the same quantity as this file.
+	 */
+	public void append(UVArray values) throws IOException, UnitMismatchException {
+		if (values.unit() == unit) {
+			append(values.values, values.offset, values.length);
+			return;
+		}
+		Converter c = ConversionCache.DEFAULT.get(values.unit(), unit);
+		double[] converted = new double[Math.min(values.length, scratch.capacity() / 8)];
+		for (int i = 0; i < values.length; i += converted.length) {
+			int m = Math.min(values.length - i, converted.length);
+			c.apply(values.values, values.offset + i, converted, 0, m);
+			append(converted, 0, m);
+		}
+	}
+
+	/**
+	 * Appends a value, converted to the unit of this file. Appending many values at once is much faster.
+	 *
+	 * @param uv the value to append.
+	 * @throws IOException if writing fails.
+	 * @throws UnitMismatchException if the value is not of the same quantity as this file.
+	 */
+	public void append(UV uv) throws IOException, UnitMismatchException {
+		append(uv.convert(unit).value());
+	}
+
+	private void setLength(long length) throws IOException {
+		scratch.clear();
+		scratch.putLong(length).flip();
+		writeFully(scratch, dataStart - 8);
+		this.length = length;
+	}
+
+	private long writeFully(ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			position += channel.write(buf, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Forces appended values to the storage device.
+	 * @throws IOException if writing fails.
+	 */
+	public void force() throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * Rereads the length from the file, to see values appended by another writer.
+	 * @throws IOException if reading fails.
+	 */
+	public void refresh() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8).order(UVCodec.ORDER);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, dataStart - 8 + buf.position()) < 0) throw new IOException("File is truncated.");
+		}
+		length = buf.getLong(0);
+	}
+
+	/**
+	 * Returns the mapped values of a segment, covering at least the values up to the current length.
+	 *
+	 * @param s the index of the segment.
+	 * @return a buffer of the values of the segment, indexed from 0.
+	 */
+	private DoubleBuffer segment(int s) throws IOException {
+		long first = (long) s * segmentValues;
+		int n = (int) Math.min(segmentValues, length - first);
+		if (s >= segments.length) {
+			DoubleBuffer[] grown = new DoubleBuffer[s + 1];
+			System.arraycopy(segments, 0, grown, 0, segments.length);
+			segments = grown;
+		}
+		DoubleBuffer d = segments[s];
+		if (d == null || d.capacity() < n) { // Not mapped yet, or mapped before values were appended
+			MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + 8 * first, 8L * n);
+			d = m.order(UVCodec.ORDER).asDoubleBuffer();
+			segments[s] = d;
+		}
+		return d;
+	}
+
+	/**
+	 * Returns a value.
+	 *
+	 * @param i the index of the value.
+	 * @return the value, in the unit of this file.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public double getValue(long i) throws IOException {
+		if (i < 0 || i >= length) throw new IndexOutOfBoundsException(Long.toString(i));
+		return segment((int) (i / segmentValues)).get((int) (i % segmentValues));
+	}
+
+	/**
+	 * Returns a value.
+	 *
+	 * @param i the index of the value.
+	 * @return the value, in the unit of this file.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UV get(long i) throws IOException {
+		return new UV(getValue(i), unit);
+	}
+
+	/**
+	 * Copies a range of values, converted to another unit.
+	 *
+	 * @param from the index of the first value.
+	 * @param dst the array to copy the values to.
+	 * @param dstPos the index of dst to copy the first value to.
+	 * @param n the number of values.
+	 * @param to the unit to convert the values to.
+	 * @throws IOException if mapping the file fails.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this file.
+	 */
+	public void convert(long from, double[] dst, int dstPos, int n, U to) throws IOException, UnitMismatchException {
+		double factor = ConversionCache.DEFAULT.get(unit, to).factor();
+		if (from < 0 || n < 0 || from + n > length) throw new IndexOutOfBoundsException(String.format("Range [%d, %d) is outside of %d values.", from, from + n, length));
+		for (int i = 0; i < n; ) {
+			long index = from + i;
+			DoubleBuffer d = segment((int) (index / segmentValues));
+			int start = (int) (index % segmentValues);
+			int m = Math.min(n - i, d.capacity() - start);
+			for (int j = 0; j < m; j++) {
+				dst[dstPos + i + j] = d.get(start + j) * factor;
+			}
+			i += m;
+		}
+	}
+
+	/**
+	 * Reads a range of values into a new array on the heap.
+	 *
+	 * @param from the index of the first value.
+	 * @param n the number of values.
+	 * @return an array of the values, in the unit of this file.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UVArray read(long from, int n) throws IOException {
+		double[] values = new double[n];
+		try {
+			convert(from, values, 0, n, unit);
+		} catch (UnitMismatchException e) {
+			throw new IllegalStateException(e); // Never happens, the unit is converted to itself
+		}
+		return new UVArray(values, unit);
+	}
+
+	/**
+	 * Calculates the sum of all values.
+	 * @return the sum, in the unit of this file.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UV sum() throws IOException {
+		double sum = 0;
+		for (int s = 0; (long) s * segmentValues < length; s++) {
+			DoubleBuffer d = segment(s);
+			int n = (int) Math.min(segmentValues, length - (long) s * segmentValues);
+			for (int i = 0; i < n; i++) {
+				sum += d.get(i);
+			}
+		}
+		return new UV(sum, unit);
+	}
+
+	/**
+	 * Calculates the smallest value.
+	 * @return the smallest value, in the unit of this file. NaN if the file is empty.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UV min() throws IOException {
+		double min = length == 0 ? Double.NaN : Double.POSITIVE_INFINITY;
+		for (int s = 0; (long) s * segmentValues < length; s++) {
+			DoubleBuffer d = segment(s);
+			int n = (int) Math.min(segmentValues, length - (long) s * segmentValues);
+			for (int i = 0; i < n; i++) {
+				min = Math.min(min, d.get(i));
+			}
+		}
+		return new UV(min, unit);
+	}
+
+	/**
+	 * Calculates the largest value.
+	 * @return the largest value, in the unit of this file. NaN if the file is empty.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UV max() throws IOException {
+		double max = length == 0 ? Double.NaN : Double.NEGATIVE_INFINITY;
+		for (int s = 0; (long) s * segmentValues < length; s++) {
+			DoubleBuffer d = segment(s);
+			int n = (int) Math.min(segmentValues, length - (long) s * segmentValues);
+			for (int i = 0; i < n; i++) {
+				max = Math.max(max, d.get(i));
+			}
+		}
+		return new UV(max, unit);
+	}
+
+	/**
+	 * Calculates the mean of all values.
+	 * @return the mean, in the unit of this file. NaN if the file is empty.
+	 * @throws IOException if mapping the file fails.
+	 */
+	public UV mean() throws IOException {
+		return new UV(sum().value() / length, unit);
+	}
+
+	/** Closes the file. Mapped segments stay valid until they are garbage collected. */
+	@Override
+	public void close() throws IOException {
+		segments = new DoubleBuffer[0];
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("UVColumnFile[%s, %d values]", unit, length);
+	}
+
+}
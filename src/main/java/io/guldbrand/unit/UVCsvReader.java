@@ -0,0 +1,506 @@
+package io.guldbrand.unit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Streaming reader of delimited text, such as CSV or TSV files, where every cell is a value with a unit, like "12.5 km/h".
+ * <p>
+ * Each column is converted to a target unit while it is read, and collected in a primitive array rather than as {@link UV}
+ * objects. Units may differ from row to row as long as they can be converted to the target unit of the column. The text is
+ * read in chunks, from a channel, without creating a String per line or per cell. Each column remembers the last few units it
+ * has seen, as bytes with their converter, so a cell in a known unit costs a byte comparison, a multiplication and an addition.
+ * Other units are parsed with {@link U#parse(CharSequence)}.
+ * <p>
+ * A file can be read in parallel with {@link #read(FileChannel, int)}. It is split into chunks at line breaks, which are
+ * parsed in the common {@link java.util.concurrent.ForkJoinPool} and concatenated in order.
+ * <p>
+ * A cell is a number, optionally followed by a unit, and may be surrounded by spaces and by double quotes. A number without
+ * a unit is in the target unit of its column. Empty and missing cells are NaN. Quotes are not escaped, so a cell cannot
+ * contain the delimiter. Cells are readings, so they are converted like {@link UV#convertAbsolute(U)}: "20 °C" in a column
+ * read in kelvin is 293.15. Lines end with "\n" or "\r\n"; blank lines are skipped.
+ * <p>
+ * Ex: new UVCsvReader(',', true, U.KM, null, U.KG).read(channel) reads the first and third columns of a CSV file with a header
+ * line, in km and kg.
+ * <p>
+ * Immutable and thread-safe. Every read has its own state.
+ */
+public final class UVCsvReader {
+
+	static final int CHUNK_SIZE = 1 << 20;
+	private static final int UNIT_CACHE_SIZE = 8; // Units remembered per column
+	private static final double[] POWERS_OF_TEN = new double[23]; // The powers of ten that are exact doubles
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private final byte delimiter;
+	private final boolean header;
+	private final U[] targets;
+	private final int chunkSize;
+
+	/**
+	 * Creates a reader.
+	 *
+	 * @param delimiter the character between cells, such as ',' or '\t'. Must be ASCII.
+	 * @param header whether the first line is a header, which is skipped.
+	 * @param targets the unit each column is converted to, or null for columns that are skipped. Columns after the last target are skipped.
+	 */
+	public UVCsvReader(char delimiter, boolean header, U... targets) {
+		this(delimiter, header, targets, CHUNK_SIZE);
+	}
+
+	/** Creates a reader that reads chunks of a given size, for tests. */
+	UVCsvReader(char delimiter, boolean header, U[] targets, int chunkSize) {
+		if (delimiter >= 0x80 || delimiter == '\n' || delimiter == '\r' || delimiter == '"') {
+			throw new IllegalArgumentException("Invalid delimiter: " + delimiter);
+		}
+		this.delimiter = (byte) delimiter;
+		this.header = header;
+		this.targets = targets.clone();
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Reads all lines from a channel.
+	 *
+	 * @param ch the channel to read from, from its position to its end.
+	 * @return the columns and the number of rows read.
+	 * @throws IOException if reading fails.
+	 * @throws ParseException if a cell is not a number with a valid unit, or its unit cannot be converted to the target unit.
+	 *                        The error offset is the byte offset of the cell, from where reading started.
+	 */
+	public Result read(ReadableByteChannel ch) throws IOException, ParseException {
+		long start = System.nanoTime();
+		Parser p = new Parser();
+		long bytes = p.parse(ch::read, 0, Long.MAX_VALUE, header);
+		return new Result(columns(Arrays.asList(p)), p.rows, bytes, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reads all lines of a file in parallel.
+	 *
+	 * @param ch the file, read from its start to its end. Its position is not changed.
+	 * @param chunks the number of chunks to split the file into, such as the number of processors.
+	 * @return the columns, with the rows in the order of the file, and the number of rows read.
+	 * @throws IOException if reading fails.
+	 * @throws ParseException if a cell is not a number with a valid unit, or its unit cannot be converted to the target unit.
+	 *                        The error offset is the byte offset of the cell in the file, or Integer.MAX_VALUE if it is larger.
+	 */
+	public Result read(FileChannel ch, int chunks) throws IOException, ParseException {
+		if (chunks < 1) throw new IllegalArgumentException("Chunks must be positive: " + chunks);
+		long start = System.nanoTime();
+		long size = ch.size();
+		chunks = (int) Math.max(1, Math.min(chunks, size / chunkSize));
+
+		List<Chunk> tasks = new ArrayList<Chunk>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			tasks.add(new Chunk(ch, size * i / chunks, size * (i + 1) / chunks));
+		}
+		List<Parser> parsers = new ArrayList<Parser>(chunks);
+		try {
+			if (chunks == 1) {
+				parsers.add(tasks.get(0).compute());
+			} else {
+				for (Chunk task : ForkJoinTask.invokeAll(tasks)) parsers.add(task.join());
+			}
+		} catch (RuntimeException e) {
+			// The pool may rethrow a copy of the exception of a task, with the original as its cause
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof IOException) throw (IOException) t;
+				if (t instanceof ParseException) throw (ParseException) t;
+			}
+			throw e;
+		}
+
+		int rows = 0;
+		for (Parser p : parsers) rows += p.rows;
+		return new Result(columns(parsers), rows, size, System.nanoTime() - start);
+	}
+
+	/** Concatenates the columns of parsers, in order. */
+	private UVArray[] columns(List<Parser> parsers) {
+		int rows = 0;
+		for (Parser p : parsers) rows += p.rows;
+		UVArray[] columns = new UVArray[targets.length];
+		for (int c = 0; c < targets.length; c++) {
+			if (targets[c] == null) continue;
+			double[] values;
+			if (parsers.size() == 1 && parsers.get(0).values[c].length == rows) {
+				values = parsers.get(0).values[c];
+			} else {
+				values = new double[rows];
+				int pos = 0;
+				for (Parser p : parsers) {
+					System.arraycopy(p.values[c], 0, values, pos, p.rows);
+					pos += p.rows;
+				}
+			}
+			columns[c] = new UVArray(values, targets[c]);
+		}
+		return columns;
+	}
+
+	/** Reads bytes into a buffer, like {@link ReadableByteChannel#read(ByteBuffer)}. */
+	@FunctionalInterface
+	private interface Source {
+		int read(ByteBuffer buf) throws IOException;
+	}
+
+	/** Parses the lines of one chunk of a file. */
+	private final class Chunk extends RecursiveTask<Parser> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel ch;
+		private final long from;
+		private final long until;
+
+		Chunk(FileChannel ch, long from, long until) {
+			this.ch = ch;
+			this.from = from;
+			this.until = until;
+		}
+
+		@Override
+		protected Parser compute() {
+			try {
+				// The chunk owns the lines that start in [from, until). A line that starts before from belongs to the previous chunk.
+				boolean skipFirst = header;
+				if (from > 0) {
+					ByteBuffer b = ByteBuffer.allocate(1);
+					ch.read(b, from - 1);
+					skipFirst = b.get(0) != '\n';
+				}
+				Parser p = new Parser();
+				long[] position = {from};
+				p.parse(buf -> {
+					int n = ch.read(buf, position[0]);
+					if (n > 0) position[0] += n;
+					return n;
+				}, from, until, skipFirst);
+				return p;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (ParseException e) {
+				throw new ChunkException(e);
+			}
+		}
+	}
+
+	/** Carries a ParseException out of a chunk task. */
+	private static final class ChunkException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ChunkException(ParseException e) {
+			super(e);
+		}
+	}
+
+	/** The state of one read: the columns read so far and the units seen per column. */
+	private final class Parser {
+		final double[][] values = new double[targets.length][];
+		int rows;
+
+		// Per column, the bytes of recently seen units and their converters, replaced round robin
+		private final byte[][][] unitBytes = new byte[targets.length][UNIT_CACHE_SIZE][];
+		private final Converter[][] unitConverters = new Converter[targets.length][UNIT_CACHE_SIZE];
+		private final int[] unitNext = new int[targets.length];
+
+		private int numberEnd; // The end of the number parsed by number()
+
+		Parser() {
+			for (int c = 0; c < targets.length; c++) {
+				if (targets[c] != null) values[c] = new double[1024];
+			}
+		}
+
+		/**
+		 * Parses the lines that start in [from, until).
+		 *
+		 * @param in the source of bytes, positioned at from.
+		 * @param from the offset of the first byte read.
+		 * @param until the offset where no more lines start.
+		 * @param skipFirst whether to skip the first line.
+		 * @return the number of bytes read.
+		 */
+		long parse(Source in, long from, long until, boolean skipFirst) throws IOException, ParseException {
+			ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+			long base = from; // The offset of the first byte in buf
+			boolean eof = false;
+			while (!eof) {
+				eof = in.read(buf) < 0;
+				byte[] a = buf.array();
+				int end = buf.position();
+				int lineStart = 0;
+				for (int i = 0; i < end; i++) {
+					if (a[i] != '\n') continue;
+					if (base + lineStart >= until) return base + lineStart - from;
+					if (skipFirst) {
+						skipFirst = false;
+					} else {
+						line(a, lineStart, i, base);
+					}
+					lineStart = i + 1;
+				}
+				if (eof) {
+					if (lineStart < end && base + lineStart < until && !skipFirst) line(a, lineStart, end, base);
+					return base + end - from;
+				}
+				if (lineStart == 0 && end == a.length) {
+					// A line longer than the buffer
+					buf = ByteBuffer.allocate(a.length * 2).put(a, 0, end);
+				} else {
+					System.arraycopy(a, lineStart, a, 0, end - lineStart);
+					buf.position(end - lineStart);
+					base += lineStart;
+				}
+			}
+			return base - from;
+		}
+
+		/** Parses a line without its line break. */
+		private void line(byte[] a, int start, int end, long base) throws ParseException {
+			if (end > start && a[end - 1] == '\r') end--;
+			if (end == start) return;
+			if (rows == Integer.MAX_VALUE - 8) throw new ParseException("Too many rows.", offset(base + start));
+			int c = 0;
+			int cellStart = start;
+			for (int i = start; i <= end && c < targets.length; i++) {
+				if (i < end && a[i] != delimiter) continue;
+				if (targets[c] != null) {
+					if (rows == values[c].length) values[c] = Arrays.copyOf(values[c], (int) Math.min(2L * rows, Integer.MAX_VALUE - 8));
+					values[c][rows] = cell(c, a, cellStart, i, base);
+				}
+				c++;
+				cellStart = i + 1;
+			}
+			for (; c < targets.length; c++) {
+				if (targets[c] == null) continue;
+				if (rows == values[c].length) values[c] = Arrays.copyOf(values[c], (int) Math.min(2L * rows, Integer.MAX_VALUE - 8));
+				values[c][rows] = Double.NaN;
+			}
+			rows++;
+		}
+
+		/** Parses a cell of column c, in the target unit of the column. */
+		private double cell(int c, byte[] a, int start, int end, long base) throws ParseException {
+			while (start < end && isSpace(a[start])) start++;
+			while (end > start && isSpace(a[end - 1])) end--;
+			if (end - start >= 2 && a[start] == '"' && a[end - 1] == '"') {
+				start++;
+				end--;
+				while (start < end && isSpace(a[start])) start++;
+				while (end > start && isSpace(a[end - 1])) end--;
+			}
+			if (start == end) return Double.NaN;
+
+			double value = number(a, start, end, base);
+			int unitStart = numberEnd;
+			while (unitStart < end && isSpace(a[unitStart])) unitStart++;
+			if (unitStart == end) return value;
+			return converter(c, a, unitStart, end, base).applyAbsolute(value);
+		}
+
+		/** Returns the converter from the unit in a[start, end) to the target unit of column c. */
+		private Converter converter(int c, byte[] a, int start, int end, long base) throws ParseException {
+			byte[][] known = unitBytes[c];
+			int length = end - start;
+			search:
+			for (int k = 0; k < UNIT_CACHE_SIZE; k++) {
+				byte[] b = known[k];
+				if (b == null) break;
+				if (b.length != length) continue;
+				for (int i = 0; i < length; i++) {
+					if (b[i] != a[start + i]) continue search;
+				}
+				return unitConverters[c][k];
+			}
+
+			String name = new String(a, start, length, StandardCharsets.UTF_8);
+			U u;
+			try {
+				u = U.parse(name);
+			} catch (ParseException e) {
+				throw new ParseException(String.format("Invalid unit \"%s\" at offset %d: %s", name, base + start, e.getMessage()), offset(base + start));
+			}
+			Converter conv = ConversionCache.DEFAULT.find(u, targets[c]);
+			if (conv == null) {
+				throw new ParseException(String.format("%s at offset %d can not be converted to %s.", u, base + start, targets[c]), offset(base + start));
+			}
+			int k = unitNext[c];
+			unitNext[c] = (k + 1) % UNIT_CACHE_SIZE;
+			known[k] = Arrays.copyOfRange(a, start, end);
+			unitConverters[c][k] = conv;
+			return conv;
+		}
+
+		/**
+		 * Parses the number at the start of a[start, end) and sets numberEnd to where it ends.
+		 * Numbers with at most 15 significant digits and a small exponent are calculated exactly with one multiplication or
+		 * division of doubles, other numbers with {@link Double#parseDouble(String)}.
+		 */
+		private double number(byte[] a, int start, int end, long base) throws ParseException {
+			int i = start;
+			boolean negative = false;
+			if (a[i] == '-' || a[i] == '+') {
+				negative = a[i] == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0; // Significant digits in mantissa
+			int exponent = 0;
+			boolean any = false;
+			for (; i < end && isDigit(a[i]); i++) {
+				any = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (a[i] - '0');
+					if (mantissa != 0) digits++;
+				} else {
+					exponent++;
+				}
+			}
+			if (i < end && a[i] == '.') {
+				for (i++; i < end && isDigit(a[i]); i++) {
+					any = true;
+					if (digits < 18) {
+						mantissa = mantissa * 10 + (a[i] - '0');
+						if (mantissa != 0) digits++;
+						exponent--;
+					}
+				}
+			}
+			if (!any) return special(a, start, end, base);
+			if (i < end && (a[i] == 'e' || a[i] == 'E')) {
+				// An exponent only if digits follow, so that "5 em" and "5em" are 5 ems
+				int j = i + 1;
+				boolean negativeExponent = false;
+				if (j < end && (a[j] == '-' || a[j] == '+')) {
+					negativeExponent = a[j] == '-';
+					j++;
+				}
+				if (j < end && isDigit(a[j])) {
+					int e = 0;
+					for (; j < end && isDigit(a[j]); j++) {
+						if (e < 100000) e = e * 10 + (a[j] - '0');
+					}
+					exponent += negativeExponent ? -e : e;
+					i = j;
+				}
+			}
+			numberEnd = i;
+			double value;
+			if (mantissa == 0) {
+				value = 0;
+			} else if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+				value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			} else {
+				value = Double.parseDouble(new String(a, negative ? start + 1 : start, i - (negative ? start + 1 : start), StandardCharsets.ISO_8859_1));
+			}
+			return negative ? -value : value;
+		}
+
+		/** Parses NaN and Infinity, which end at the first space. */
+		private double special(byte[] a, int start, int end, long base) throws ParseException {
+			int i = start;
+			while (i < end && !isSpace(a[i])) i++;
+			String text = new String(a, start, i - start, StandardCharsets.ISO_8859_1);
+			try {
+				if (text.indexOf("NaN") < 0 && text.indexOf("Infinity") < 0) throw new NumberFormatException();
+				numberEnd = i;
+				return Double.parseDouble(text);
+			} catch (NumberFormatException e) {
+				throw new ParseException(String.format("Invalid number \"%s\" at offset %d.", text, base + start), offset(base + start));
+			}
+		}
+	}
+
+	private static int offset(long offset) {
+		return (int) Math.min(offset, Integer.MAX_VALUE);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private boolean isSpace(byte b) {
+		return (b == ' ' || b == '\t') && b != delimiter;
+	}
+
+	/**
+	 * The columns read by a {@link UVCsvReader}, with the throughput of the read.
+	 */
+	public static final class Result {
+
+		private final UVArray[] columns;
+		private final int rows;
+		private final long bytes;
+		private final long nanos;
+
+		Result(UVArray[] columns, int rows, long bytes, long nanos) {
+			this.columns = columns;
+			this.rows = rows;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Returns a column.
+		 *
+		 * @param index the index of the column in the file.
+		 * @return the values of the column, in its target unit. Null if the column was skipped.
+		 */
+		public UVArray column(int index) {
+			return index < columns.length ? columns[index] : null;
+		}
+
+		/**
+		 * Returns the number of rows read, not including the header and blank lines.
+		 * @return the number of rows.
+		 */
+		public int rows() {
+			return rows;
+		}
+
+		/**
+		 * Returns the number of bytes read.
+		 * @return the number of bytes.
+		 */
+		public long bytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the time the read took.
+		 * @return the elapsed time, in nanoseconds.
+		 */
+		public long elapsedNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the throughput of the read.
+		 * @return the number of rows read per second.
+		 */
+		public double rowsPerSecond() {
+			return rows / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d rows, %d bytes in %s (%.0f rows/s)", rows, bytes, new UV(nanos / 1e6, U.MS).convertAuto(1), rowsPerSecond());
+		}
+	}
+
+}
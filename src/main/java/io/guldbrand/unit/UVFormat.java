@@ -0,0 +1,259 @@
+package io.guldbrand.unit;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Formats unit values into a caller-supplied {@link StringBuilder} or {@link Appendable}.
+ * <p>
+ * The number of digits depends on the magnitude of the value. A format is a list of rules, each giving the smallest absolute value
+ * it applies to and either a number of decimals (like "%.2f") or a number of significant digits (like "%.2g").
+ * The first rule whose minimum the value reaches is used. The default rules are those of {@link UV#toString()}:
+ * <pre>
+ * |value| &gt;= 10000: 6 significant digits  12345.7
+ * |value| &gt;= 100:   0 decimals              123
+ * |value| &gt;= 10:    1 decimal               12.3
+ * |value| &gt;= 1:     2 decimals              1.23
+ * otherwise:         2 significant digits  0.012
+ * </pre>
+ * Output is identical to that of {@link String#format(java.util.Locale, String, Object...)} with {@link java.util.Locale#ROOT}
+ * and the same patterns, but numbers are written digit by digit without {@link java.util.Formatter}.
+ * The decimal separator is always '.'. Unit names are cached by the units themselves.
+ * Formats are immutable and can be shared between threads.
+ */
+public final class UVFormat {
+
+	/** The format used by {@link UV#toString()}. */
+	public static final UVFormat DEFAULT = new UVFormat()
+			  .withSignificant(10000, 6)
+			  .withDecimals(100, 0)
+			  .withDecimals(10, 1)
+			  .withDecimals(1, 2)
+			  .withSignificant(0, 2);
+
+	private static final int MAX_DIGITS = 17; // Decimals
+	private static final int MAX_SIGNIFICANT = MAX_DIGITS - 3; // Fixed notation of significant digits has up to 3 more decimals
+	private static final long[] POW10 = new long[MAX_DIGITS + 2];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+	}
+	private static final double[] POW10_DOUBLE = new double[23]; // Powers of ten that are exact doubles
+	static {
+		POW10_DOUBLE[0] = 1;
+		for (int i = 1; i < POW10_DOUBLE.length; i++) POW10_DOUBLE[i] = POW10_DOUBLE[i - 1] * 10;
+	}
+
+	private static final double FAST_LIMIT = 1e12; // Scaled values below this have enough fraction bits to detect ties reliably
+	private static final double TIE_MARGIN = 1e-3;
+
+	private final double[] minimums; // Sorted descending
+	private final boolean[] significant; // True: digits are significant digits. False: digits are decimals.
+	private final int[] digits;
+
+	/** Creates a format without rules. Values are written with 2 significant digits until rules are added. */
+	public UVFormat() {
+		this(new double[0], new boolean[0], new int[0]);
+	}
+
+	private UVFormat(double[] minimums, boolean[] significant, int[] digits) {
+		this.minimums = minimums;
+		this.significant = significant;
+		this.digits = digits;
+	}
+
+	/**
+	 * Returns a copy of this format with a rule writing a fixed number of decimals, like "%.2f".
+	 *
+	 * @param minimum the smallest absolute value the rule applies to.
+	 * @param decimals the number of decimals, at most 17.
+	 * @return a new format with the rule added.
+	 */
+	public UVFormat withDecimals(double minimum, int decimals) {
+		return with(minimum, false, decimals);
+	}
+
+	/**
+	 * Returns a copy of this format with a rule writing a fixed number of significant digits, like "%.2g".
+	 *
+	 * @param minimum the smallest absolute value the rule applies to.
+	 * @param digits the number of significant digits, between 1 and 14.
+	 * @return a new format with the rule added.
+	 */
+	public UVFormat withSignificant(double minimum, int digits) {
+		return with(minimum, true, Math.max(digits, 1));
+	}
+
+	private UVFormat with(double minimum, boolean significant, int digits) {
+		int max = significant ? MAX_SIGNIFICANT : MAX_DIGITS;
+		if (digits < 0 || digits > max) throw new IllegalArgumentException("Digits must be between 0 and " + max + ": " + digits);
+		int n = minimums.length;
+		int i = 0;
+		while (i < n && minimums[i] >= minimum) i++; // Keep descending order. Rules added later lose ties.
+
+		double[] m = new double[n + 1];
+		boolean[] s = new boolean[n + 1];
+		int[] d = new int[n + 1];
+		for (int j = 0, k = 0; j <= n; j++) {
+			if (j == i) {
+				m[j] = minimum;
+				s[j] = significant;
+				d[j] = digits;
+			} else {
+				m[j] = minimums[k];
+				s[j] = this.significant[k];
+				d[j] = this.digits[k];
+				k++;
+			}
+		}
+		return new UVFormat(m, s, d);
+	}
+
+	/**
+	 * Writes a unit value, such as "12.5 km/h".
+	 *
+	 * @param uv the unit value to write.
+	 * @param sb the builder to append to.
+	 * @return sb.
+	 */
+	public StringBuilder format(UV uv, StringBuilder sb) {
+		formatValue(uv.value(), sb);
+		return sb.append(' ').append(uv.unit().toString());
+	}
+
+	/**
+	 * Writes a unit value, such as "12.5 km/h", to any appendable.
+	 *
+	 * @param uv the unit value to write.
+	 * @param out the appendable to write to.
+	 * @param <A> the type of the appendable.
+	 * @return out.
+	 * @throws IOException if out throws it.
+	 */
+	public <A extends Appendable> A formatTo(UV uv, A out) throws IOException {
+		if (out instanceof StringBuilder) {
+			format(uv, (StringBuilder) out);
+		} else {
+			StringBuilder sb = new StringBuilder(24);
+			format(uv, sb);
+			out.append(sb);
+		}
+		return out;
+	}
+
+	/**
+	 * Formats a unit value into a new string.
+	 *
+	 * @param uv the unit value to format.
+	 * @return the formatted unit value.
+	 */
+	public String format(UV uv) {
+		return format(uv, new StringBuilder(24)).toString();
+	}
+
+	/**
+	 * Writes a number, with the digits given by the rule for its magnitude.
+	 *
+	 * @param value the number to write.
+	 * @param sb the builder to append to.
+	 * @return sb.
+	 */
+	public StringBuilder formatValue(double value, StringBuilder sb) {
+		double abs = Math.abs(value);
+		for (int i = 0; i < minimums.length; i++) {
+			if (abs >= minimums[i]) {
+				return significant[i] ? appendSignificant(sb, value, digits[i]) : appendDecimals(sb, value, digits[i]);
+			}
+		}
+		return appendSignificant(sb, value, 2);
+	}
+
+	/** Same as String.format("%.{decimals}f", value). */
+	static StringBuilder appendDecimals(StringBuilder sb, double value, int decimals) {
+		if (appendSpecial(sb, value)) return sb;
+		double abs = Math.abs(value);
+		double scaled = abs * POW10[decimals];
+		long n;
+		if (scaled < FAST_LIMIT && (n = roundHalfUp(scaled)) >= 0) {
+			return appendDigits(sb, n, decimals);
+		}
+		// Slow path for large values and values close to a tie. Formatter rounds the shortest decimal representation half up.
+		return sb.append(new BigDecimal(Double.toString(abs)).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+	}
+
+	/** Same as String.format("%.{precision}g", value). */
+	static StringBuilder appendSignificant(StringBuilder sb, double value, int precision) {
+		if (appendSpecial(sb, value)) return sb;
+		double abs = Math.abs(value);
+		if (abs == 0) return appendDigits(sb, 0, precision - 1);
+
+		// Round to n * 10^(exponent - precision + 1), where n has exactly precision digits
+		int exponent = (int) Math.floor(Math.log10(abs));
+		long n = -1;
+		int shift = precision - 1 - exponent;
+		if (shift >= -22 && shift <= 22) {
+			double scaled = shift >= 0 ? abs * POW10_DOUBLE[shift] : abs / POW10_DOUBLE[-shift];
+			if (scaled < POW10[precision - 1]) { // log10 rounded up
+				exponent--;
+				shift++;
+				scaled *= 10;
+			} else if (scaled >= POW10[precision]) { // log10 rounded down
+				exponent++;
+				shift--;
+				scaled /= 10;
+			}
+			if (scaled < FAST_LIMIT) n = roundHalfUp(scaled);
+		}
+		if (n < 0) {
+			BigDecimal bd = new BigDecimal(Double.toString(abs)).round(new MathContext(precision, RoundingMode.HALF_UP));
+			n = bd.unscaledValue().longValue() * POW10[precision - bd.precision()];
+			exponent = bd.precision() - 1 - bd.scale();
+		} else if (n == POW10[precision]) {
+			n /= 10;
+			exponent++;
+		}
+
+		if (exponent >= -4 && exponent < precision) {
+			return appendDigits(sb, n, precision - 1 - exponent);
+		}
+		appendDigits(sb, n, precision - 1).append(exponent < 0 ? "e-" : "e+");
+		int e = Math.abs(exponent);
+		if (e < 10) sb.append('0');
+		return sb.append(e);
+	}
+
+	/** Writes NaN and infinities, and the sign of other values. Returns true if the value has been written completely. */
+	private static boolean appendSpecial(StringBuilder sb, double value) {
+		if (Double.isNaN(value)) {
+			sb.append("NaN");
+			return true;
+		}
+		if (Double.doubleToRawLongBits(value) < 0) sb.append('-'); // Also -0.0, like Formatter
+		if (Double.isInfinite(value)) {
+			sb.append("Infinity");
+			return true;
+		}
+		return false;
+	}
+
+	/** Rounds a non-negative value half up. Returns -1 if it is too close to a tie to be decided from the binary value. */
+	private static long roundHalfUp(double scaled) {
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if (Math.abs(fraction - 0.5) < TIE_MARGIN) return -1;
+		return (long) floor + (fraction > 0.5 ? 1 : 0);
+	}
+
+	/** Writes n / 10^decimals with exactly the given number of decimals. */
+	private static StringBuilder appendDigits(StringBuilder sb, long n, int decimals) {
+		if (decimals == 0) return sb.append(n);
+		long p = POW10[decimals];
+		sb.append(n / p).append('.');
+		long fraction = n % p;
+		for (long z = p / 10; z > fraction && z > 1; z /= 10) sb.append('0');
+		return sb.append(fraction);
+	}
+
+}
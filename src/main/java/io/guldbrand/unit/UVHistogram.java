@@ -0,0 +1,235 @@
+package io.guldbrand.unit;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of unit values with logarithmic buckets, for quantiles such as the median or p99 of latencies or sizes.
+ * <p>
+ * Values are converted to the unit of the histogram and counted in the bucket covering them. Bucket bounds grow by a constant
+ * factor, so any quantile is returned with a relative error of at most the accuracy given when the histogram was created.
+ * Memory is fixed by the range of values tracked, recording is constant time, and histograms with the same layout can be
+ * merged, so every thread can record into its own histogram and the results combined with {@link #merge(UVHistogram)}.
+ * <p>
+ * Values below the range, including 0 and negative values, are counted in the lowest bucket and values above it in the highest.
+ * The exact min and max are kept, and quantiles never fall outside them.
+ * <p>
+ * Ex: new UVHistogram(U.MS, 0.001, 60000, 0.01) tracks durations from 1 microsecond to 1 minute within 1%, in 897 buckets.
+ * <p>
+ * Not thread-safe.
+ */
+public class UVHistogram {
+
+	private static final int MAX_BUCKETS = 1 << 20;
+
+	private final U unit;
+	private final double lowest; // In unit
+	private final double highest; // In unit
+	private final double accuracy;
+	private final double gamma; // The ratio between the upper and lower bound of a bucket
+	private final double inverseLogGamma;
+	private final int minIndex; // The logarithmic index of the lowest bucket
+
+	private final long[] counts;
+	private long count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private Converter last; // The converter of the previous value
+
+	/**
+	 * Creates an empty histogram.
+	 *
+	 * @param unit the unit values are counted in.
+	 * @param lowest the smallest value to track accurately, in unit. Must be positive.
+	 * @param highest the largest value to track accurately, in unit.
+	 * @param accuracy the largest relative error of quantiles, such as 0.01 for 1%. Between 0 and 1.
+	 */
+	public UVHistogram(U unit, double lowest, double highest, double accuracy) {
+		if (!(lowest > 0) || !(highest >= lowest)) {
+			throw new IllegalArgumentException(String.format("Invalid range: %s to %s.", lowest, highest));
+		}
+		if (!(accuracy > 0 && accuracy < 1)) throw new IllegalArgumentException("Accuracy must be between 0 and 1: " + accuracy);
+		this.unit = unit;
+		this.lowest = lowest;
+		this.highest = highest;
+		this.accuracy = accuracy;
+		this.gamma = (1 + accuracy) / (1 - accuracy);
+		this.inverseLogGamma = 1 / Math.log(gamma);
+		this.minIndex = logIndex(lowest);
+		long buckets = (long) logIndex(highest) - minIndex + 1;
+		if (buckets > MAX_BUCKETS) throw new IllegalArgumentException(String.format("Range and accuracy need %d buckets, more than %d.", buckets, MAX_BUCKETS));
+		this.counts = new long[(int) buckets];
+	}
+
+	/** Copy constructor, used by {@link #snapshot()}. */
+	private UVHistogram(UVHistogram h) {
+		this.unit = h.unit;
+		this.lowest = h.lowest;
+		this.highest = h.highest;
+		this.accuracy = h.accuracy;
+		this.gamma = h.gamma;
+		this.inverseLogGamma = h.inverseLogGamma;
+		this.minIndex = h.minIndex;
+		this.counts = h.counts.clone();
+		this.count = h.count;
+		this.sum = h.sum;
+		this.min = h.min;
+		this.max = h.max;
+	}
+
+	/** Bucket k covers (gamma^(k-1), gamma^k]. */
+	private int logIndex(double value) {
+		return (int) Math.ceil(Math.log(value) * inverseLogGamma);
+	}
+
+	/**
+	 * Records a value in the unit of this histogram.
+	 *
+	 * @param value the value to record.
+	 */
+	public void record(double value) {
+		if (Double.isNaN(value)) return;
+		int i = value <= lowest ? 0 : value >= highest ? counts.length - 1 : Math.min(logIndex(value) - minIndex, counts.length - 1);
+		counts[i]++;
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value the value to record.
+	 * @param u the unit of the value.
+	 * @throws UnitMismatchException if the unit is not of the same quantity as this histogram.
+	 */
+	public void record(double value, U u) throws UnitMismatchException {
+		Converter c = last;
+		if (c == null || c.from() != u) {
+			c = ConversionCache.DEFAULT.get(u, unit);
+			last = c;
+		}
+		record(c.apply(value));
+	}
+
+	/** Like {@link #record(double, U)} but the value is specified as a unit value. */
+	public void record(UV uv) throws UnitMismatchException {
+		record(uv.value(), uv.unit());
+	}
+
+	/**
+	 * Adds the values of another histogram to this one.
+	 *
+	 * @param other a histogram with the same unit, range and accuracy.
+	 * @return this histogram.
+	 * @throws IllegalArgumentException if the histograms have different layouts.
+	 */
+	public UVHistogram merge(UVHistogram other) {
+		if (other.unit != unit || other.lowest != lowest || other.highest != highest || other.accuracy != accuracy) {
+			throw new IllegalArgumentException(String.format("Cannot merge histograms with different layouts: %s and %s.", this, other));
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	/**
+	 * Returns a copy of this histogram, which is not affected by later records.
+	 * @return a copy of this histogram.
+	 */
+	public UVHistogram snapshot() {
+		return new UVHistogram(this);
+	}
+
+	/** Removes all values. */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Returns a quantile of the recorded values.
+	 *
+	 * @param q the quantile, between 0 and 1. 0.5 is the median and 0.99 is p99.
+	 * @return the quantile, in the unit of this histogram, within the accuracy of the histogram. NaN if it is empty.
+	 */
+	public UV quantile(double q) {
+		if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+		if (count == 0) return new UV(Double.NaN, unit);
+		double rank = q * (count - 1);
+		long seen = 0;
+		int i = 0;
+		for (; i < counts.length - 1; i++) {
+			seen += counts[i];
+			if (seen > rank) break;
+		}
+		double value = 2 * Math.pow(gamma, i + minIndex) / (gamma + 1); // The middle of the bucket, on a relative scale
+		return new UV(Math.max(min, Math.min(max, value)), unit);
+	}
+
+	/**
+	 * Returns a quantile of the recorded values in the most suitable unit for display. See {@link UV#convertAuto(double)}.
+	 *
+	 * @param q the quantile, between 0 and 1.
+	 * @return the quantile, within the accuracy of the histogram.
+	 */
+	public UV quantileAuto(double q) {
+		return quantile(q).convertAuto(1);
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * @return the number of recorded values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the smallest recorded value.
+	 * @return the exact smallest value, in the unit of this histogram. NaN if it is empty.
+	 */
+	public UV getMin() {
+		return new UV(count == 0 ? Double.NaN : min, unit);
+	}
+
+	/**
+	 * Returns the largest recorded value.
+	 * @return the exact largest value, in the unit of this histogram. NaN if it is empty.
+	 */
+	public UV getMax() {
+		return new UV(count == 0 ? Double.NaN : max, unit);
+	}
+
+	/**
+	 * Returns the average of the recorded values.
+	 * @return the exact average, in the unit of this histogram. NaN if it is empty.
+	 */
+	public UV getMean() {
+		return new UV(sum / count, unit);
+	}
+
+	/**
+	 * Returns the unit of this histogram.
+	 * @return the unit values are counted in.
+	 */
+	public U getUnit() {
+		return unit;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("UVHistogram[%s, %s to %s, accuracy %s, count %d]", unit, lowest, highest, accuracy, count);
+	}
+
+}
@@ -0,0 +1,198 @@
+package io.guldbrand.unit;
+
+import java.util.function.Consumer;
+
+/**
+ * Count, sum, minimum, maximum and average of unit values, like {@link java.util.DoubleSummaryStatistics}.
+ * <p>
+ * Values are converted to the unit of the statistics as they are accepted and kept in plain doubles.
+ * The converter of the previous value is reused while values come in the same unit, so a stream of values in one unit
+ * costs one multiplication per value. Values of another quantity are handled according to a {@link UVCollectors.MismatchPolicy}.
+ * <p>
+ * Not thread-safe. Used by {@link UVCollectors}, which gives every thread of a parallel stream its own statistics and combines them.
+ */
+public class UVSummaryStatistics implements Consumer<UV> {
+
+	private final UVCollectors.MismatchPolicy policy;
+	private U unit; // Null until the first value if no unit was given
+
+	private long count;
+	private long skipped;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	private Converter last; // The converter of the previous value
+	private U lastSkipped; // The unit of the previous skipped value
+
+	/**
+	 * Creates empty statistics in the unit of the first value accepted. Values of other quantities are rejected.
+	 */
+	public UVSummaryStatistics() {
+		this(null, UVCollectors.MismatchPolicy.FAIL);
+	}
+
+	/**
+	 * Creates empty statistics.
+	 *
+	 * @param unit the unit to keep the statistics in, or null for the unit of the first value accepted.
+	 * @param policy what to do with values that are not of the same quantity as the unit.
+	 * @throws IllegalArgumentException if the unit is null and the policy is SKIP. Parts of a parallel stream could then
+	 * keep values of different quantities, which cannot be combined.
+	 */
+	public UVSummaryStatistics(U unit, UVCollectors.MismatchPolicy policy) {
+		check(unit, policy);
+		this.unit = unit;
+		this.policy = policy;
+	}
+
+	/** Throws if values of other quantities are skipped without a unit. Called by {@link UVCollectors} before the stream starts. */
+	static void check(U unit, UVCollectors.MismatchPolicy policy) {
+		if (unit == null && policy == UVCollectors.MismatchPolicy.SKIP) throw new IllegalArgumentException("Values can only be skipped with a unit given.");
+	}
+
+	/**
+	 * Adds a value to the statistics.
+	 *
+	 * @param uv the value to add.
+	 * @throws IllegalArgumentException if the value is not of the same quantity as the statistics and the policy is FAIL.
+	 */
+	@Override
+	public void accept(UV uv) {
+		accept(uv.value(), uv.unit());
+	}
+
+	/**
+	 * Adds a value to the statistics.
+	 *
+	 * @param value the value to add.
+	 * @param u the unit of the value.
+	 * @throws IllegalArgumentException if the value is not of the same quantity as the statistics and the policy is FAIL.
+	 */
+	public void accept(double value, U u) {
+		if (unit == null) unit = u;
+		Converter c = last;
+		if (c == null || c.from() != u) {
+			if (u == lastSkipped) {
+				skipped++;
+				return;
+			}
+			c = converter(u);
+			if (c == null) {
+				lastSkipped = u;
+				return;
+			}
+			last = c;
+		}
+		add(c.apply(value));
+	}
+
+	private void add(double value) {
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/** @return the converter from u to the unit of the statistics, or null if values of u are skipped. */
+	private Converter converter(U u) {
+		Converter c = ConversionCache.DEFAULT.find(u, unit);
+		if (c != null) return c;
+		if (policy == UVCollectors.MismatchPolicy.SKIP) {
+			skipped++;
+			return null;
+		}
+		UnitMismatchException e = U.mismatch(u, unit);
+		throw new IllegalArgumentException(e.getMessage(), e);
+	}
+
+	/**
+	 * Adds the values of other statistics to these.
+	 *
+	 * @param other the statistics to add.
+	 * @return these statistics.
+	 * @throws IllegalArgumentException if the statistics are not of the same quantity and the policy is FAIL.
+	 */
+	public UVSummaryStatistics combine(UVSummaryStatistics other) {
+		skipped += other.skipped;
+		if (other.count == 0) return this;
+		if (unit == null) unit = other.unit;
+		Converter c = converter(other.unit);
+		if (c == null) {
+			skipped += other.count - 1; // converter() counted one
+			return this;
+		}
+		count += other.count;
+		sum += c.apply(other.sum);
+		min = Math.min(min, c.apply(other.min));
+		max = Math.max(max, c.apply(other.max));
+		return this;
+	}
+
+	/**
+	 * Returns the unit of the statistics.
+	 * @return the unit of the statistics, or null if no unit was given and no value has been accepted.
+	 */
+	public U getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Returns the number of values added.
+	 * @return the number of values added. Skipped values are not counted.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of values skipped because they were not of the same quantity as the statistics.
+	 * @return the number of skipped values.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Returns the sum of the values.
+	 * @return the sum of the values. 0 if there are none.
+	 */
+	public UV getSum() {
+		return new UV(sum, unitOrNone());
+	}
+
+	/**
+	 * Returns the smallest value.
+	 * @return the smallest value. NaN if there are none.
+	 */
+	public UV getMin() {
+		return new UV(count == 0 ? Double.NaN : min, unitOrNone());
+	}
+
+	/**
+	 * Returns the largest value.
+	 * @return the largest value. NaN if there are none.
+	 */
+	public UV getMax() {
+		return new UV(count == 0 ? Double.NaN : max, unitOrNone());
+	}
+
+	/**
+	 * Returns the average of the values.
+	 * @return the average of the values. NaN if there are none.
+	 */
+	public UV getAverage() {
+		return new UV(sum / count, unitOrNone());
+	}
+
+	private U unitOrNone() {
+		return unit != null ? unit : U.NONE;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{count=%d, skipped=%d, sum=%s, min=%s, average=%s, max=%s}",
+				  getClass().getSimpleName(), count, skipped, getSum(), getMin(), getAverage(), getMax());
+	}
+
+}
@@ -0,0 +1,127 @@
+package io.guldbrand.unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of candidate units for displaying values, used to find the most suitable unit for a value.
+ * <p>
+ * Candidates are grouped by quantity and sorted by length when the index is created. Finding the best unit for a value
+ * is then a lookup of its quantity followed by a binary search on the logarithm of the length.
+ * <p>
+ * Ex: UnitIndex.SI.getBestUnit(new UV(1500, U.M), 1) returns U.KM if KM is a candidate.
+ */
+public final class UnitIndex {
+
+	/** Metric units. This is the index used by {@link U#getBestUnit(UV, double)} and {@link UV#convertAuto(double)}. */
+	public static final UnitIndex SI = new UnitIndex(U.MM, U.CM, U.M,
+			  U.MM.pow(2), U.CM.pow(2), U.DM.pow(2), U.M.pow(2),
+			  U.ML, U.CC, U.L, U.M.pow(3),
+			  U.MS, U.S, U.MIN, U.H, U.DAY, U.WEEK, U.MONTH, U.YEAR,
+			  U.G, U.KG, U.TON,
+
+			  U.L.div(U.S), U.L.div(U.H), U.L.div(U.DAY),
+			  U.ML.div(U.S), U.ML.div(U.H), U.ML.div(U.DAY));
+
+	/** Imperial and US customary units. */
+	public static final UnitIndex IMPERIAL = new UnitIndex(U.INCH, U.FOOT, U.YARD, U.MILE,
+			  U.INCH.pow(2), U.FOOT.pow(2), U.YARD.pow(2), U.MILE.pow(2),
+			  U.TEASPOON, U.TABLESPOON, U.FLOZ, U.CUP, U.PINT, U.GALLON,
+			  U.MS, U.S, U.MIN, U.H, U.DAY, U.WEEK, U.MONTH, U.YEAR,
+			  U.OUNCE, U.POUND, U.TON_US,
+
+			  U.FOOT.div(U.S), U.MILE.div(U.H),
+			  U.GALLON.div(U.S), U.GALLON.div(U.MIN), U.GALLON.div(U.H));
+
+	private final Map<Dimension, Candidates> candidates;
+
+	/**
+	 * Creates an index of the given candidate units.
+	 *
+	 * @param units the units that values may be displayed in.
+	 */
+	public UnitIndex(U... units) {
+		this(Arrays.asList(units));
+	}
+
+	/**
+	 * Creates an index of the given candidate units.
+	 *
+	 * @param units the units that values may be displayed in.
+	 */
+	public UnitIndex(Collection<U> units) {
+		Map<Dimension, List<U>> byDimension = new HashMap<Dimension, List<U>>();
+		for (U u : units) {
+			List<U> list = byDimension.get(u.getDimension());
+			if (list == null) {
+				list = new ArrayList<U>();
+				byDimension.put(u.getDimension(), list);
+			}
+			list.add(u);
+		}
+		candidates = new HashMap<Dimension, Candidates>(byDimension.size() * 2);
+		for (Map.Entry<Dimension, List<U>> e : byDimension.entrySet()) {
+			candidates.put(e.getKey(), new Candidates(e.getValue()));
+		}
+	}
+
+	/**
+	 * Calculates and returns the most suitable unit to display a given UV in.
+	 * That is the candidate unit of the same quantity in which the value is as close to the target value as possible.
+	 *
+	 * @param uv     the source unit vector you want the best unit for
+	 * @param target the target value of the numeric part.
+	 * @return the most suitable unit to display UV in. The unit of uv if there are no candidates of its quantity, or if its value is 0.
+	 */
+	public U getBestUnit(UV uv, double target) {
+		Candidates c = candidates.get(uv.unit().getDimension());
+		if (c == null) return uv.unit();
+		// The value is closest to target in the unit whose length is closest to (value in base units / target), on a log scale.
+		double log = Math.log(Math.abs(uv.value() * uv.unit().getLength() / target));
+		if (Double.isNaN(log) || Double.isInfinite(log)) return uv.unit();
+		return c.closest(log);
+	}
+
+	/**
+	 * Returns the candidate units of the same quantity as the given unit.
+	 *
+	 * @param u a unit.
+	 * @return the candidate units of the same quantity as u, sorted by length.
+	 */
+	public List<U> getCandidates(U u) {
+		Candidates c = candidates.get(u.getDimension());
+		if (c == null) return new ArrayList<U>(0);
+		return Arrays.asList(c.units.clone());
+	}
+
+	/** Candidate units of one quantity, sorted by length. */
+	private static final class Candidates {
+		private final U[] units;
+		private final double[] logLengths;
+
+		Candidates(List<U> list) {
+			units = list.toArray(new U[0]);
+			Arrays.sort(units, Comparator.comparingDouble(U::getLength));
+			logLengths = new double[units.length];
+			for (int i = 0; i < units.length; i++) {
+				logLengths[i] = Math.log(units[i].getLength());
+			}
+		}
+
+		/** @return the unit with log length closest to the given one. */
+		U closest(double logLength) {
+			int i = Arrays.binarySearch(logLengths, logLength);
+			if (i >= 0) return units[i];
+			i = -i - 1; // Insertion point, logLengths[i - 1] < logLength < logLengths[i]
+			if (i == 0) return units[0];
+			if (i == units.length) return units[units.length - 1];
+			return logLength - logLengths[i - 1] <= logLengths[i] - logLength ? units[i - 1] : units[i];
+		}
+	}
+
+}
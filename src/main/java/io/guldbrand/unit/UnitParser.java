@@ -0,0 +1,182 @@
+package io.guldbrand.unit;
+
+import java.text.ParseException;
+
+/**
+ * Parser for unit expressions such as "km/h", "kg*m/s^2" or "(kg*m)/s^2".
+ * <p>
+ * Grammar:
+ * <pre>
+ * expression = term { ('*' | '/') term }
+ * term       = factor [ '^' number ]
+ * factor     = '(' expression ')' | name | '1'
+ * </pre>
+ * Names are looked up in {@link UnitRegistry#DEFAULT}, by short name first and then by long name.
+ * A name is everything between two operators with surrounding whitespace removed, so names may contain spaces ("fl oz").
+ * This covers the names written by {@link U#toString()} and {@link U#getDerivedName()}.
+ * <p>
+ * The parser reads the text in place without creating tokens. Parsed units are cached, so parsing a text seen before
+ * costs hashing it and comparing it with the cached text, without creating a String, whatever the kind of CharSequence.
+ * The cache is direct-mapped: a text replaces the entry in its slot.
+ */
+final class UnitParser {
+
+	static final int CACHE_SIZE = 1024; // A power of two
+	private static final Entry[] cache = new Entry[CACHE_SIZE]; // Racy but safe: entries are immutable
+
+	private final CharSequence text;
+	private final UnitRegistry.Snapshot registry;
+	private int pos;
+
+	private UnitParser(CharSequence text, UnitRegistry.Snapshot registry) {
+		this.text = text;
+		this.registry = registry;
+	}
+
+	/**
+	 * Parses a unit expression, using the cache.
+	 *
+	 * @param text the unit expression.
+	 * @return the unit described by the text.
+	 * @throws ParseException if the text is not a valid expression or contains an unknown unit name.
+	 */
+	static U parse(CharSequence text) throws ParseException {
+		int hash = hash(text);
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		Entry e = cache[slot];
+		if (e != null && e.hash == hash && e.text.contentEquals(text)) return e.unit;
+
+		String key = text.toString();
+		U u = new UnitParser(key, UnitRegistry.DEFAULT.snapshot()).parseAll();
+		cache[slot] = new Entry(key, hash, u);
+		return u;
+	}
+
+	/** Same as {@link String#hashCode()}, without creating a String. */
+	private static int hash(CharSequence text) {
+		if (text instanceof String) return text.hashCode(); // Cached by String
+		int h = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h;
+	}
+
+	/** A cached text and its unit. */
+	private static final class Entry {
+		final String text;
+		final int hash;
+		final U unit;
+
+		Entry(String text, int hash, U unit) {
+			this.text = text;
+			this.hash = hash;
+			this.unit = unit;
+		}
+	}
+
+	private U parseAll() throws ParseException {
+		U u = expression();
+		skipWhitespace();
+		if (pos < text.length()) throw error("Unexpected '" + text.charAt(pos) + "'");
+		return u;
+	}
+
+	private U expression() throws ParseException {
+		U u = term();
+		while (true) {
+			skipWhitespace();
+			if (pos >= text.length()) return u;
+			char c = text.charAt(pos);
+			if (c == '*') {
+				pos++;
+				u = u.mul(term());
+			} else if (c == '/') {
+				pos++;
+				u = u.div(term());
+			} else {
+				return u;
+			}
+		}
+	}
+
+	private U term() throws ParseException {
+		U u = factor();
+		skipWhitespace();
+		if (pos < text.length() && text.charAt(pos) == '^') {
+			pos++;
+			u = u.pow(number());
+		}
+		return u;
+	}
+
+	private U factor() throws ParseException {
+		skipWhitespace();
+		if (pos >= text.length()) throw error("Expected a unit");
+		char c = text.charAt(pos);
+		if (c == '(') {
+			pos++;
+			U u = expression();
+			skipWhitespace();
+			if (pos >= text.length() || text.charAt(pos) != ')') throw error("Expected ')'");
+			pos++;
+			return u;
+		}
+		int start = pos;
+		while (pos < text.length() && !isOperator(text.charAt(pos))) pos++;
+		int end = pos;
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+		if (end == start) throw error("Expected a unit");
+		if (end - start == 1 && text.charAt(start) == '1') return U.NONE; // As in "1/s"
+
+		String name = text.subSequence(start, end).toString();
+		U u = registry.get(name);
+		if (u == null) {
+			pos = start;
+			throw error("Unknown unit '" + name + "'");
+		}
+		return u;
+	}
+
+	/** Reads a number as written by {@link Double#toString(double)}, such as 2, -1, 0.5 or 1.0E-5. */
+	private double number() throws ParseException {
+		skipWhitespace();
+		int start = pos;
+		if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) pos++;
+		int digits = skipDigits();
+		if (pos < text.length() && text.charAt(pos) == '.') {
+			pos++;
+			digits += skipDigits();
+		}
+		if (digits == 0) {
+			pos = start;
+			throw error("Expected a number");
+		}
+		if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+			pos++;
+			if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) pos++;
+			if (skipDigits() == 0) throw error("Expected an exponent");
+		}
+		return Double.parseDouble(text.subSequence(start, pos).toString()); // Correctly rounded, so U.toString() round-trips
+	}
+
+	/** @return the number of digits skipped. */
+	private int skipDigits() {
+		int start = pos;
+		while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') pos++;
+		return pos - start;
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+	}
+
+	private static boolean isOperator(char c) {
+		return c == '*' || c == '/' || c == '^' || c == '(' || c == ')';
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(String.format("%s at position %d in \"%s\".", message, pos, text), pos);
+	}
+
+}
@@ -0,0 +1,308 @@
+package io.guldbrand.unit;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of named units, for looking up units by name or by quantity.
+ * <p>
+ * Every unit created with one of the public constructors of {@link U} is registered in {@link #DEFAULT}.
+ * Lookups never lock and can run concurrently with registrations. Registrations are serialized.
+ * If several units share a name, lookups by that name return the unit registered first.
+ * <p>
+ * Readers on a hot path can take a {@link #snapshot()}, an immutable copy of the registry that is backed by plain hash maps.
+ * <p>
+ * On request, every registered unit gets an id, its position in registration order, and the conversion factors between all
+ * registered units are kept in a dense table, see {@link #conversions()}.
+ */
+public final class UnitRegistry {
+
+	/** The registry all units created with the public constructors of {@link U} are registered in. */
+	public static final UnitRegistry DEFAULT = new UnitRegistry();
+
+	private final Object lock = new Object();
+	private final List<U> units = new ArrayList<U>(); // In registration order. Guarded by lock.
+	private final Map<Key, U> byKey = new HashMap<Key, U>(); // For finding duplicates. Guarded by lock.
+	private final ConcurrentHashMap<String, U> byShortName = new ConcurrentHashMap<String, U>();
+	private final ConcurrentHashMap<String, U> byLongName = new ConcurrentHashMap<String, U>();
+	private final ConcurrentHashMap<Dimension, UnitList> byDimension = new ConcurrentHashMap<Dimension, UnitList>(); // Values are immutable, replaced on change
+
+	private volatile ConversionMatrix conversions; // Created on first use, then updated under lock
+	private volatile Snapshot snapshot; // Null when out of date
+
+	/** Creates an empty registry. */
+	public UnitRegistry() {
+	}
+
+	/**
+	 * Registers a unit. A unit that is already registered, or that has the same names and length as a registered unit, is ignored.
+	 *
+	 * @param u the unit to register.
+	 * @return true iff the unit was registered.
+	 */
+	public boolean register(U u) {
+		synchronized (lock) {
+			return add(u);
+		}
+	}
+
+	/**
+	 * Registers a family of units at once, such as all prefixed versions of a unit.
+	 *
+	 * @param units the units to register.
+	 * @return the number of units that were registered.
+	 */
+	public int registerAll(U... units) {
+		return registerAll(Arrays.asList(units));
+	}
+
+	/**
+	 * Registers a family of units at once, such as all prefixed versions of a unit.
+	 *
+	 * @param units the units to register.
+	 * @return the number of units that were registered.
+	 */
+	public int registerAll(Collection<? extends U> units) {
+		int added = 0;
+		synchronized (lock) {
+			for (U u : units) {
+				if (add(u)) added++;
+			}
+		}
+		return added;
+	}
+
+	/** Adds a unit to all indexes. Must hold lock. */
+	private boolean add(U u) {
+		Key key = new Key(u);
+		if (byKey.get(key) != null) return false;
+		byKey.put(key, u);
+		units.add(u);
+		if (conversions != null) conversions.add(u);
+		UnitList same = byDimension.get(u.getDimension());
+		byDimension.put(u.getDimension(), same == null ? new UnitList(u) : same.plus(u));
+		if (!u.getShortCompoundName().isEmpty()) byShortName.putIfAbsent(u.getShortCompoundName(), u);
+		if (!u.getLongCompoundName().isEmpty()) byLongName.putIfAbsent(u.getLongCompoundName(), u);
+		snapshot = null;
+		return true;
+	}
+
+	/**
+	 * What makes two units duplicates: the same quantity, length and names. The length is compared exactly, unlike in
+	 * {@link U#equals(Object)}, so that it can be hashed.
+	 */
+	private static final class Key {
+		private final Dimension dimension;
+		private final long length;
+		private final String shortName;
+		private final String longName;
+
+		Key(U u) {
+			this.dimension = u.getDimension();
+			this.length = Double.doubleToLongBits(u.getLength());
+			this.shortName = u.getShortCompoundName();
+			this.longName = u.getLongCompoundName();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key k = (Key) obj;
+			return length == k.length && dimension.equals(k.dimension) && shortName.equals(k.shortName) && longName.equals(k.longName);
+		}
+
+		@Override
+		public int hashCode() {
+			return ((dimension.hashCode() * 31 + Long.hashCode(length)) * 31 + shortName.hashCode()) * 31 + longName.hashCode();
+		}
+	}
+
+	/**
+	 * The units of one quantity, in registration order. Immutable: adding a unit returns a new list, which shares the array
+	 * with this one and writes beyond its size, so adding takes amortized constant time. Must hold lock to add, and only to
+	 * the latest list.
+	 */
+	private static final class UnitList extends AbstractList<U> implements RandomAccess {
+		private final U[] units;
+		private final int size;
+
+		UnitList(U u) {
+			this(new U[] {u}, 1);
+		}
+
+		private UnitList(U[] units, int size) {
+			this.units = units;
+			this.size = size;
+		}
+
+		UnitList plus(U u) {
+			U[] a = size < units.length ? units : Arrays.copyOf(units, 2 * size);
+			a[size] = u;
+			return new UnitList(a, size + 1);
+		}
+
+		@Override
+		public U get(int index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException(String.format("Index %d of %d units.", index, size));
+			return units[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Looks up a unit by its short name, or by its long name if there is no unit with that short name.
+	 *
+	 * @param name the short or long name of a unit, such as "km" or "kilometer".
+	 * @return the unit with that name, or null if there is none.
+	 */
+	public U get(String name) {
+		U u = byShortName.get(name);
+		return u != null ? u : byLongName.get(name);
+	}
+
+	/**
+	 * Looks up a unit by its short name.
+	 *
+	 * @param shortName the short name of a unit, such as "km".
+	 * @return the unit with that name, or null if there is none.
+	 */
+	public U getByShortName(String shortName) {
+		return byShortName.get(shortName);
+	}
+
+	/**
+	 * Looks up a unit by its long name.
+	 *
+	 * @param longName the long name of a unit, such as "kilometer".
+	 * @return the unit with that name, or null if there is none.
+	 */
+	public U getByLongName(String longName) {
+		return byLongName.get(longName);
+	}
+
+	/**
+	 * Returns all registered units of the same quantity as a given unit.
+	 *
+	 * @param u a unit.
+	 * @return an unmodifiable list of the registered units of the same quantity as u, in registration order.
+	 */
+	public List<U> getSameQuantity(U u) {
+		List<U> list = byDimension.get(u.getDimension());
+		return list != null ? list : Collections.<U>emptyList();
+	}
+
+	/**
+	 * Returns all registered units.
+	 * @return an unmodifiable list of all registered units, in registration order.
+	 */
+	public List<U> getAll() {
+		synchronized (lock) {
+			return Collections.unmodifiableList(new ArrayList<U>(units));
+		}
+	}
+
+	/**
+	 * Returns the number of registered units.
+	 * @return the number of registered units.
+	 */
+	public int size() {
+		synchronized (lock) {
+			return units.size();
+		}
+	}
+
+	/**
+	 * Returns the table of conversion factors between the units of this registry, which are addressed by id.
+	 * The table is created on the first call, in time and memory proportional to the square of the number of units,
+	 * and is then updated when units are registered. Registries that never call this do not pay for it.
+	 * @return the conversion table of this registry.
+	 */
+	public ConversionMatrix conversions() {
+		ConversionMatrix m = conversions;
+		if (m != null) return m;
+		synchronized (lock) {
+			if (conversions == null) {
+				m = new ConversionMatrix();
+				for (U u : units) m.add(u);
+				conversions = m;
+			}
+			return conversions;
+		}
+	}
+
+	/**
+	 * Returns an immutable copy of this registry. The copy is reused until the next registration.
+	 * @return a snapshot of the current contents of this registry.
+	 */
+	public Snapshot snapshot() {
+		Snapshot s = snapshot;
+		if (s != null) return s;
+		synchronized (lock) {
+			if (snapshot == null) snapshot = new Snapshot(this);
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Immutable copy of a registry. Lookups are plain hash map reads.
+	 */
+	public static final class Snapshot {
+		private final List<U> units;
+		private final Map<String, U> byShortName;
+		private final Map<String, U> byLongName;
+		private final Map<Dimension, UnitList> byDimension;
+
+		/** Must hold registry.lock. */
+		private Snapshot(UnitRegistry registry) {
+			this.units = Collections.unmodifiableList(new ArrayList<U>(registry.units));
+			this.byShortName = new HashMap<String, U>(registry.byShortName);
+			this.byLongName = new HashMap<String, U>(registry.byLongName);
+			this.byDimension = new HashMap<Dimension, UnitList>(registry.byDimension);
+		}
+
+		/** @see UnitRegistry#get(String) */
+		public U get(String name) {
+			U u = byShortName.get(name);
+			return u != null ? u : byLongName.get(name);
+		}
+
+		/** @see UnitRegistry#getByShortName(String) */
+		public U getByShortName(String shortName) {
+			return byShortName.get(shortName);
+		}
+
+		/** @see UnitRegistry#getByLongName(String) */
+		public U getByLongName(String longName) {
+			return byLongName.get(longName);
+		}
+
+		/** @see UnitRegistry#getSameQuantity(U) */
+		public List<U> getSameQuantity(U u) {
+			List<U> list = byDimension.get(u.getDimension());
+			return list != null ? list : Collections.<U>emptyList();
+		}
+
+		/** @see UnitRegistry#getAll() */
+		public List<U> getAll() {
+			return units;
+		}
+
+		/** @see UnitRegistry#size() */
+		public int size() {
+			return units.size();
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package io.guldbrand.unit;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Table of units numbered by small integer ids, written as the header of the binary format of {@link UVCodec}.
+ * <p>
+ * A unit is written with its full structure: the base dimension, power, length, definition power, offset and names
+ * of every component, and its compound length, power and names. The total length and offset of the unit are written too,
+ * for readers without this library. Doubles are written bit for bit, so a unit read back has exactly the length of the unit
+ * written, including custom units defined with {@link U#U(U, double, String, String)}.
+ * A unit read back that is structurally identical to an existing unit, such as {@link U#KM}, is that unit.
+ * <p>
+ * Not thread-safe.
+ */
+public final class UnitTable {
+
+	/** The largest number of units in a table. Ids are written as unsigned shorts. */
+	public static final int MAX_UNITS = 0xFFFF;
+
+	private final List<U> units = new ArrayList<U>();
+	private final IdentityHashMap<U, Integer> ids = new IdentityHashMap<U, Integer>();
+
+	/** Creates an empty table. */
+	public UnitTable() {
+	}
+
+	/**
+	 * Returns the id of a unit, adding the unit to the table if it is not in it.
+	 *
+	 * @param u a unit.
+	 * @return the id of the unit.
+	 * @throws IllegalStateException if the table is full.
+	 */
+	public int id(U u) {
+		Integer id = ids.get(u);
+		if (id != null) return id;
+		if (units.size() >= MAX_UNITS) throw new IllegalStateException("Unit table is full.");
+		id = units.size();
+		units.add(u);
+		ids.put(u, id);
+		return id;
+	}
+
+	/**
+	 * Returns the unit with an id.
+	 *
+	 * @param id the id of a unit.
+	 * @return the unit.
+	 * @throws IndexOutOfBoundsException if there is no unit with that id.
+	 */
+	public U get(int id) {
+		return units.get(id);
+	}
+
+	/**
+	 * Returns the number of units in this table.
+	 * @return the number of units.
+	 */
+	public int size() {
+		return units.size();
+	}
+
+	/**
+	 * Returns the number of bytes {@link #writeTo(ByteBuffer)} writes.
+	 * @return the encoded size of this table.
+	 */
+	public int encodedSize() {
+		int size = 4;
+		for (U u : units) {
+			size += stringSize(u.getShortCompoundName()) + stringSize(u.getLongCompoundName()) + 4 * 8 + 4;
+			for (BU bu : u.components) {
+				size += 1 + 4 * 8 + stringSize(bu.getShortName()) + stringSize(bu.getLongName());
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Writes this table.
+	 *
+	 * @param buf the buffer to write to, from its position.
+	 * @throws java.nio.BufferOverflowException if the buffer has less than {@link #encodedSize()} bytes remaining.
+	 */
+	public void writeTo(ByteBuffer buf) {
+		buf.putInt(units.size());
+		for (U u : units) {
+			putString(buf, u.getShortCompoundName());
+			putString(buf, u.getLongCompoundName());
+			buf.putDouble(u.getLength()); // Informative, recalculated when read
+			buf.putDouble(u.getOffset());
+			buf.putDouble(u.getCompoundLength());
+			buf.putDouble(u.getCompoundPower());
+			buf.putInt(u.components.size());
+			for (BU bu : u.components) {
+				buf.put((byte) bu.getQuantityBase().ordinal());
+				buf.putDouble(bu.getPower());
+				buf.putDouble(bu.getDefinitionLength());
+				buf.putDouble(bu.getDefPower());
+				buf.putDouble(bu.getOffset());
+				putString(buf, bu.getShortName());
+				putString(buf, bu.getLongName());
+			}
+		}
+	}
+
+	/**
+	 * Reads a table written by {@link #writeTo(ByteBuffer)}.
+	 *
+	 * @param buf the buffer to read from, from its position.
+	 * @return the table.
+	 * @throws IOException if the buffer does not contain a valid table.
+	 */
+	public static UnitTable readFrom(ByteBuffer buf) throws IOException {
+		try {
+			UnitTable table = new UnitTable();
+			int n = buf.getInt();
+			if (n < 0 || n > MAX_UNITS) throw new IOException("Invalid number of units: " + n);
+			Base[] bases = Base.values();
+			for (int i = 0; i < n; i++) {
+				String shortName = getString(buf);
+				String longName = getString(buf);
+				buf.getDouble(); // Length
+				buf.getDouble(); // Offset
+				double compoundLength = buf.getDouble();
+				double compoundPower = buf.getDouble();
+				int components = buf.getInt();
+				if (components < 0 || components > bases.length * 64) throw new IOException("Invalid number of components: " + components);
+				ArrayList<BU> list = new ArrayList<BU>(components);
+				for (int j = 0; j < components; j++) {
+					int base = buf.get();
+					if (base < 0 || base >= bases.length) throw new IOException("Invalid base dimension: " + base);
+					double power = buf.getDouble();
+					double length = buf.getDouble();
+					double defPower = buf.getDouble();
+					double offset = buf.getDouble();
+					list.add(new BU(length, getString(buf), getString(buf), new Quantity(bases[base], power), defPower, offset));
+				}
+				U u = U.fromStructure(list, compoundLength, compoundPower, shortName, longName);
+				table.units.add(u); // Keep ids even if two written units turn out to be the same unit
+				if (!table.ids.containsKey(u)) table.ids.put(u, i);
+			}
+			return table;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Unit table is truncated.", e);
+		}
+	}
+
+	private static int stringSize(String s) {
+		return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private static void putString(ByteBuffer buf, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) throw new IllegalArgumentException("Name is too long: " + s);
+		buf.putShort((short) bytes.length);
+		buf.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "UnitTable" + units;
+	}
+
+}
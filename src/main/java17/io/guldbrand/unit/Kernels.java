@@ -0,0 +1,102 @@
+package io.guldbrand.unit;
+
+/**
+ * Element-wise loops over ranges of doubles, shared by {@link Converter}, {@link UVArray} and {@link ParallelUV}.
+ * <p>
+ * This is the Java 17 version, in the multi-release jar. When the jdk.incubator.vector module is present
+ * (java --add-modules jdk.incubator.vector), loops over more than a few elements run in {@link VectorKernels}.
+ * Otherwise, or if the system property io.guldbrand.unit.vector is false, they are the same scalar loops as on Java 8.
+ * Both produce the same results, bit for bit.
+ * <p>
+ * Ranges are not checked. Source and destination may be the same array, at the same position.
+ */
+final class Kernels {
+
+	/** The system property that disables the Vector API when false. */
+	static final String VECTOR_PROPERTY = "io.guldbrand.unit.vector";
+
+	/** Whether the loops use the Vector API. */
+	static final boolean VECTORIZED = vectorized();
+
+	private static final int MIN_LENGTH = 32; // Shorter ranges are not worth the setup of vectors
+
+	private Kernels() {
+	}
+
+	private static boolean vectorized() {
+		if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) return false;
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return false;
+		try {
+			return VectorKernels.LANES > 1;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/** dst = src * factor */
+	static void scale(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.scale(src, srcPos, dst, dstPos, length, factor);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor;
+		}
+	}
+
+	/** dst = src * factor + offset */
+	static void affine(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor, double offset) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.affine(src, srcPos, dst, dstPos, length, factor, offset);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor + offset;
+		}
+	}
+
+	/** dst = x + y * f */
+	static void add(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.add(x, xPos, y, yPos, dst, dstPos, length, f);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] + y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x - y * f */
+	static void sub(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.sub(x, xPos, y, yPos, dst, dstPos, length, f);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] - y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x * y * f */
+	static void mul(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.mul(x, xPos, y, yPos, dst, dstPos, length, f);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] * y[yPos + i] * f;
+		}
+	}
+
+	/** dst = x / y * f */
+	static void div(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		if (VECTORIZED && length >= MIN_LENGTH) {
+			VectorKernels.div(x, xPos, y, yPos, dst, dstPos, length, f);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] / y[yPos + i] * f;
+		}
+	}
+
+}
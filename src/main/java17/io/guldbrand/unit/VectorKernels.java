@@ -0,0 +1,86 @@
+package io.guldbrand.unit;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops of {@link Kernels} with the Vector API, in the widest vectors the hardware supports.
+ * <p>
+ * Only loaded when the jdk.incubator.vector module is present. Products and sums are separate operations, not fused,
+ * so every element is rounded exactly as in the scalar loops. The elements after the last full vector are processed one by one.
+ */
+final class VectorKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/** The number of doubles per vector. */
+	static final int LANES = SPECIES.length();
+
+	private VectorKernels() {
+	}
+
+	static void scale(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, src, srcPos + i).mul(factor).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor;
+		}
+	}
+
+	static void affine(double[] src, int srcPos, double[] dst, int dstPos, int length, double factor, double offset) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, src, srcPos + i).mul(factor).add(offset).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = src[srcPos + i] * factor + offset;
+		}
+	}
+
+	static void add(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector b = DoubleVector.fromArray(SPECIES, y, yPos + i).mul(f);
+			DoubleVector.fromArray(SPECIES, x, xPos + i).add(b).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] + y[yPos + i] * f;
+		}
+	}
+
+	static void sub(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector b = DoubleVector.fromArray(SPECIES, y, yPos + i).mul(f);
+			DoubleVector.fromArray(SPECIES, x, xPos + i).sub(b).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] - y[yPos + i] * f;
+		}
+	}
+
+	static void mul(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector b = DoubleVector.fromArray(SPECIES, y, yPos + i);
+			DoubleVector.fromArray(SPECIES, x, xPos + i).mul(b).mul(f).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] * y[yPos + i] * f;
+		}
+	}
+
+	static void div(double[] x, int xPos, double[] y, int yPos, double[] dst, int dstPos, int length, double f) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector b = DoubleVector.fromArray(SPECIES, y, yPos + i);
+			DoubleVector.fromArray(SPECIES, x, xPos + i).div(b).mul(f).intoArray(dst, dstPos + i);
+		}
+		for (; i < length; i++) {
+			dst[dstPos + i] = x[xPos + i] / y[yPos + i] * f;
+		}
+	}
+
+}
@@ -1,5 +1,28 @@
 package io.guldbrand.unit;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.Stream;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -75,4 +98,669 @@ public class UnitTests {
 		Assert.assertEquals("0.0056 m^2/kg^2", new UV(3, carl).pow(2).convert(U.M.pow(2).div(U.KG.pow(2))).toString());
 	}
 
+	@Test
+	public void quantityU() {
+		// Units of the same total quantity are recognised regardless of how they were built
+		Assert.assertTrue(U.KM.div(U.H).isSameQuantity(U.M.div(U.S)));
+		Assert.assertTrue(U.N.isSameQuantity(U.G.mul(U.CM).div(U.MS.pow(2))));
+		Assert.assertTrue(U.L.isSameQuantity(U.M.pow(3)));
+		Assert.assertTrue(U.M.pow(2).div(U.M).isSameQuantity(U.M));
+		Assert.assertTrue(U.M.pow(1.0 / 3).pow(3).isSameQuantity(U.M));
+		Assert.assertFalse(U.M.isSameQuantity(U.KG));
+		Assert.assertFalse(U.M.div(U.S).isSameQuantity(U.M.div(U.S.pow(2))));
+		Assert.assertFalse(U.L.isSameQuantity(U.M.pow(2)));
+	}
+
+	@Test
+	public void converterU() throws UnitMismatchException {
+		Converter c = U.KM.div(U.H).converterTo(U.M.div(U.S));
+		Assert.assertEquals(10, c.apply(36), epsilon);
+		Assert.assertEquals(new UV(72, U.KM.div(U.H)).convert(U.M.div(U.S)).value(), c.apply(72), epsilon);
+
+		double[] values = {0, 3.6, 36, -72};
+		c.apply(values, values);
+		Assert.assertArrayEquals(new double[]{0, 1, 10, -20}, values, 1e-12);
+	}
+
+	@Test(expected = UnitMismatchException.class)
+	public void converterMismatchU() throws UnitMismatchException {
+		U.M.converterTo(U.S);
+	}
+
+	@Test
+	public void conversionCacheU() throws UnitMismatchException {
+		ConversionCache cache = new ConversionCache(2);
+		Assert.assertSame(cache.get(U.KM, U.M), cache.get(U.KM, U.M));
+		Assert.assertEquals(1, cache.hits());
+		Assert.assertEquals(1, cache.misses());
+
+		cache.get(U.H, U.S);
+		cache.get(U.G, U.KG);
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.evictions());
+
+		Assert.assertEquals(U.M.pow(2).hashCode(), U.CM.mul(U.DM).hashCode());
+	}
+
+	@Test
+	public void internU() {
+		// Repeated unit arithmetic returns the same instance
+		Assert.assertSame(U.KM.div(U.H), U.KM.div(U.H));
+		Assert.assertSame(U.KG.mul(U.M).div(U.S.pow(2)), U.KG.mul(U.M).div(U.S.pow(2)));
+		Assert.assertSame(U.CM.pow(3).reduce(), U.CM.pow(3).reduce());
+		Assert.assertNotSame(U.KM.div(U.H), U.M.div(U.S));
+	}
+
+	@Test
+	public void dimensionlessUV() throws UnitMismatchException {
+		UV two = new UV(2, U.NONE);
+		Assert.assertEquals(new UV(6, U.M), two.mul(3, U.M));
+		Assert.assertEquals(new UV(6, U.M), new UV(3, U.M).mul(two));
+		Assert.assertEquals(U.NONE, two.unit()); // Multiplication does not modify its operands
+	}
+
+	@Test
+	public void arithmeticUVArray() throws UnitMismatchException {
+		UVArray a = UVArray.of(U.M, 1, 2, 3, 4);
+		UVArray b = UVArray.of(U.CM, 100, 200, 300, 400);
+
+		Assert.assertArrayEquals(new double[]{100, 200, 300, 400}, a.convert(U.CM).toArray(), 1e-12);
+		Assert.assertArrayEquals(new double[]{2, 4, 6, 8}, a.add(b).toArray(), 1e-12);
+		Assert.assertArrayEquals(new double[]{0, 0, 0, 0}, a.sub(b).toArray(), 1e-12);
+		Assert.assertArrayEquals(new double[]{1, 4, 9, 16}, a.pow(2).toArray(), 1e-12);
+
+		// Element-wise results match the corresponding UV operations
+		for (int i = 0; i < a.length(); i++) {
+			Assert.assertEquals(a.get(i).mul(b.get(i)), a.mul(b).get(i));
+			Assert.assertEquals(a.get(i).div(b.get(i)), a.div(b).get(i));
+		}
+
+		// Slices are views
+		UVArray slice = a.slice(1, 3);
+		slice.set(0, 20);
+		Assert.assertEquals(2, slice.length());
+		Assert.assertEquals(20, a.value(1), epsilon);
+	}
+
+	@Test
+	public void parallelUVArray() throws UnitMismatchException {
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++) values[i] = i - 5000;
+		UVArray a = new UVArray(values, U.M);
+		UVArray b = a.convert(U.CM);
+		ParallelUV parallel = new ParallelUV(java.util.concurrent.ForkJoinPool.commonPool(), 128);
+
+		Assert.assertArrayEquals(b.toArray(), parallel.convert(a, U.CM).toArray(), 0);
+		Assert.assertArrayEquals(a.add(b).toArray(), parallel.add(a, b).toArray(), 0);
+		Assert.assertArrayEquals(a.mul(b).toArray(), parallel.mul(a, b).toArray(), 0);
+		Assert.assertEquals(a.sum(), parallel.sum(a));
+		Assert.assertEquals(new UV(-5000, U.M), parallel.min(a));
+		Assert.assertEquals(new UV(4999, U.M), parallel.max(a));
+		Assert.assertEquals(a.mean(), parallel.mean(a));
+	}
+
+	@Test
+	public void bestUnitUV() {
+		Assert.assertSame(U.KM, new UnitIndex(U.MM, U.M, U.KM).getBestUnit(new UV(1500, U.M), 1));
+		Assert.assertSame(U.MM, new UnitIndex(U.MM, U.M, U.KM).getBestUnit(new UV(0.002, U.M), 1));
+		Assert.assertSame(U.L, U.getBestUnit(new UV(2000, U.CC), 1));
+		Assert.assertSame(U.H, U.getBestUnit(new UV(7200, U.S), 1));
+		Assert.assertSame(U.MILE, new UV(5, U.KM).convertAuto(1, UnitIndex.IMPERIAL).unit());
+		// Units without candidates are kept
+		Assert.assertSame(U.N, U.getBestUnit(new UV(5, U.N), 1));
+	}
+
+	@Test
+	public void registryU() {
+		Assert.assertSame(U.KM, UnitRegistry.DEFAULT.get("km"));
+		Assert.assertSame(U.KM, UnitRegistry.DEFAULT.get("kilometer"));
+		Assert.assertSame(U.FLOZ, UnitRegistry.DEFAULT.snapshot().get("fl oz"));
+		Assert.assertTrue(UnitRegistry.DEFAULT.getSameQuantity(U.M.pow(3)).contains(U.GALLON));
+
+		UnitRegistry registry = new UnitRegistry();
+		Assert.assertEquals(2, registry.registerAll(U.TON_UK, U.TON_US, U.TON_UK));
+		Assert.assertSame(U.TON_UK, registry.get("ton")); // First registered wins
+		Assert.assertSame(U.TON_US, registry.get("short ton"));
+		Assert.assertNull(registry.get("kg"));
+
+		// Duplicates have the same quantity, length and names. Lists of the same quantity are not changed by later registrations.
+		List<U> masses = registry.getSameQuantity(U.KG);
+		Assert.assertFalse(registry.register(new U(U.TON_UK, 1, "ton", "long ton")));
+		Assert.assertTrue(registry.register(U.KG));
+		Assert.assertTrue(registry.register(U.G));
+		Assert.assertEquals(2, masses.size());
+		Assert.assertEquals(Arrays.asList(U.TON_UK, U.TON_US, U.KG, U.G), registry.getSameQuantity(U.KG));
+	}
+
+	@Test
+	public void parseU() throws ParseException {
+		Assert.assertEquals(U.KM.div(U.H), U.parse("km/h"));
+		Assert.assertEquals(U.N, U.parse("kg*m/s^2"));
+		Assert.assertEquals(U.N, U.parse("kilogram * meter / second^2"));
+		Assert.assertEquals(U.FLOZ, U.parse("fl oz"));
+		Assert.assertEquals(U.S.inverse(), U.parse("1/s"));
+		Assert.assertSame(U.parse("km/h"), U.parse(new StringBuilder("km/h")));
+		StringBuilder sb = new StringBuilder("m/s");
+		Assert.assertSame(U.M.div(U.S), U.parse(sb));
+		sb.setLength(0);
+		sb.append("kg");
+		Assert.assertSame(U.KG, U.parse(sb)); // The cache keeps its own copy of the text
+		Assert.assertSame(U.M.div(U.S), U.parse(CharBuffer.wrap("m/s")));
+
+		// Names written by toString can be parsed back
+		U carl = new U(U.M.div(U.KG), 0.025, "carl", "carl");
+		for (U u : new U[]{U.N, carl.pow(2), carl.pow(0.5), U.CC.pow(2), U.S.pow(-2), U.KG.mul(U.M).div(U.S.mul(U.MIN)), U.FLOZ.div(U.MIN)}) {
+			Assert.assertEquals(u, U.parse(u.toString()));
+			Assert.assertTrue(u.isSameQuantity(U.parse(u.getDerivedName())));
+		}
+		// Fractional and tiny powers, written with the shortest decimal or in exponent notation
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			String name = U.M.pow(random.nextDouble() * 4 - 2).toString();
+			Assert.assertEquals(name, U.parse(name).toString());
+		}
+		for (double p : new double[]{1e-5, -2.5e-7, 1e10}) {
+			String name = U.M.pow(p).toString();
+			Assert.assertEquals(name, U.parse(name).toString());
+		}
+	}
+
+	@Test
+	public void parseCacheAllocation() throws ParseException {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return; // Not measurable on this JVM
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		StringBuilder sb = new StringBuilder("kg*m/s^2");
+		U u = U.parse(sb);
+		for (int i = 0; i < 10000; i++) Assert.assertSame(u, U.parse(sb)); // Warm up
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 10000; i++) U.parse(sb);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 10000); // Less than a byte per parse, so no String per hit
+	}
+
+	@Test(expected = ParseException.class)
+	public void parseUnknownU() throws ParseException {
+		U.parse("km/parsec");
+	}
+
+	@Test
+	public void formatUV() throws Exception {
+		Assert.assertEquals("12346.0 m", new UV(12345.95, U.M).toString());
+		Assert.assertEquals("123 km", new UV(123.456, U.KM).toString());
+		Assert.assertEquals("12.3 kg", new UV(12.345, U.KG).toString());
+		Assert.assertEquals("1.25 h", new UV(1.245, U.H).toString());
+		Assert.assertEquals("0.012 s", new UV(0.0123, U.S).toString());
+		Assert.assertEquals("-1.0e-05 m", new UV(-0.00001, U.M).toString());
+		Assert.assertEquals("NaN m", new UV(Double.NaN, U.M).toString());
+
+		double[] values = {0, 1.005, 0.125, 99.95, 9.995, 0.00995, 999999.5, 1e22, -4.9e-324, 12345.678};
+		for (double v : values) {
+			UV uv = new UV(v, U.M);
+			Assert.assertEquals(String.format(Locale.ROOT, "%.2f %s", v, U.M), new UVFormat().withDecimals(0, 2).format(uv));
+			Assert.assertEquals(String.format(Locale.ROOT, "%.3g %s", v, U.M), new UVFormat().withSignificant(0, 3).format(uv));
+		}
+
+		StringBuilder sb = new StringBuilder("Speed: ");
+		UVFormat.DEFAULT.formatTo(new UV(25, U.KM.div(U.H)), sb);
+		Assert.assertEquals("Speed: 25.0 km/h", sb.toString());
+	}
+
+	@Test
+	public void uncheckedUV() {
+		UV km = new UV(1.5, U.KM);
+		Assert.assertEquals(1500, km.tryConvert(U.M).value(), epsilon);
+		Assert.assertNull(km.tryConvert(U.KG));
+		Assert.assertEquals(1.6, km.tryAdd(new UV(100, U.M)).value(), epsilon);
+		Assert.assertEquals(1.4, km.trySub(new UV(100, U.M)).value(), epsilon);
+		Assert.assertNull(km.tryAdd(new UV(1, U.S)));
+		Assert.assertNull(km.trySub(new UV(1, U.S)));
+
+		Assert.assertEquals(1, km.compareChecked(new UV(1, U.KM)));
+		Assert.assertEquals(0, km.compareChecked(new UV(1500, U.M)));
+		Assert.assertEquals(-1, km.compareChecked(new UV(1, U.MILE)));
+		Assert.assertEquals(UV.INCOMPARABLE, km.compareChecked(new UV(1.5, U.KG)));
+		Assert.assertFalse(km.equals(new UV(1.5, U.KG)));
+
+		Assert.assertSame(U.NONE, km.pow(0).unit());
+		Assert.assertEquals(1, km.pow(0).value(), 0);
+		Assert.assertSame(U.NONE, new UV(2, U.M.div(U.S)).pow(0).unit());
+		Assert.assertEquals(new UV(1, U.NONE).toString(), new UV(2, U.KM).pow(0).toString());
+		Assert.assertSame(U.NONE, Formula.var(0, U.KM).pow(0).unit());
+		Assert.assertSame(U.NONE, UVArray.of(U.KM, 2, 3).pow(0).unit());
+		Assert.assertArrayEquals(new double[] {1, 1}, UVArray.of(U.KM, 2, 3).pow(0).toArray(), 0);
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void compareMismatchUV() {
+		new UV(1, U.KM).compareTo(new UV(1, U.KG));
+	}
+
+	@Test
+	public void formula() throws Throwable {
+		Formula m = Formula.var(0, U.G);
+		Formula v = Formula.var(1, U.KM.div(U.H));
+		Formula t = Formula.var(2, U.MIN);
+		Formula f = m.mul(v).div(t).to(U.N);
+		Assert.assertEquals(U.N, f.unit());
+		Assert.assertEquals(3, f.arity());
+
+		UV expected = new UV(500, U.G).mul(new UV(36, U.KM.div(U.H))).div(new UV(2, U.MIN)).convert(U.N);
+		Assert.assertEquals(expected.value(), f.evaluate(500, 36, 2), 1e-12);
+		Assert.assertEquals(expected.value(), (double) f.toMethodHandle().invokeExact(500.0, 36.0, 2.0), 1e-12);
+		Assert.assertEquals(expected, f.evaluate(new UV(0.5, U.KG), new UV(10, U.M.div(U.S)), new UV(120, U.S)));
+
+		Formula area = Formula.var(0, U.CM).pow(2).add(Formula.var(1, U.MM).pow(2)).to(U.M.pow(2));
+		Assert.assertEquals(0.0001 + 0.000001, area.toBinaryOperator().applyAsDouble(1, 1), 1e-15);
+		Assert.assertEquals(3000, Formula.var(0, U.KM).mul(Formula.constant(3)).to(U.M).toUnaryOperator().applyAsDouble(1), 1e-12);
+	}
+
+	@Test
+	public void formulaLocale() throws Exception {
+		// Loads Formula in a new class loader, so that its operations are initialized under the Turkish locale, where "DIV" lowercases to "d\u0131v"
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try (URLClassLoader loader = new URLClassLoader(new URL[] {Formula.class.getProtectionDomain().getCodeSource().getLocation()}, null)) {
+			Class<?> u = loader.loadClass(U.class.getName());
+			Class<?> formula = loader.loadClass(Formula.class.getName());
+			Method var = formula.getMethod("var", int.class, u);
+			Object distance = var.invoke(null, 0, u.getField("KM").get(null));
+			Object time = var.invoke(null, 1, u.getField("H").get(null));
+			Object speed = formula.getMethod("div", formula).invoke(distance, time);
+			DoubleBinaryOperator op = (DoubleBinaryOperator) formula.getMethod("toBinaryOperator").invoke(speed);
+			Assert.assertEquals(45, op.applyAsDouble(90, 2), 0);
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test(expected = UnitMismatchException.class)
+	public void formulaMismatch() throws UnitMismatchException {
+		Formula.var(0, U.KM).add(Formula.var(1, U.KG));
+	}
+
+	@Test
+	public void collectorsUV() {
+		List<UV> values = new ArrayList<UV>();
+		for (int i = 1; i <= 1000; i++) {
+			values.add(new UV(i, i % 2 == 0 ? U.M : U.KM));
+		}
+		values.add(new UV(5, U.KG));
+
+		UVSummaryStatistics stats = values.parallelStream().collect(UVCollectors.summarizing(U.M, UVCollectors.MismatchPolicy.SKIP));
+		Assert.assertEquals(1000, stats.getCount());
+		Assert.assertEquals(1, stats.getSkipped());
+		Assert.assertEquals(250500 + 250000000, stats.getSum().value(), 1e-6);
+		Assert.assertEquals(new UV(2, U.M), stats.getMin());
+		Assert.assertEquals(new UV(999, U.KM), stats.getMax());
+
+		UV sum = values.stream().limit(4).collect(UVCollectors.summing(U.KM));
+		Assert.assertEquals(4.006, sum.value(), epsilon);
+		Assert.assertEquals(U.KM, sum.unit());
+		Assert.assertEquals(new UV(5000, U.G), values.stream().filter(uv -> uv.unit() == U.KG).collect(UVCollectors.averaging(U.G)));
+
+		Map<Dimension, UVSummaryStatistics> groups = values.parallelStream().collect(UVCollectors.groupingByDimension(UVCollectors.summarizing()));
+		Assert.assertEquals(2, groups.size());
+		Assert.assertEquals(1000, groups.get(U.M.getDimension()).getCount());
+		Assert.assertEquals(new UV(5, U.KG), groups.get(U.KG.getDimension()).getSum());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void collectorsMismatchUV() {
+		Stream.of(new UV(1, U.M), new UV(1, U.S)).collect(UVCollectors.summing(U.M));
+	}
+
+	@Test
+	public void collectorsParallelUV() {
+		List<UV> values = new ArrayList<UV>();
+		for (int i = 0; i < 500; i++) values.add(new UV(i, U.KM));
+		for (int i = 0; i < 500; i++) values.add(new UV(i, i % 2 == 0 ? U.KG : U.M));
+
+		UVSummaryStatistics sequential = values.stream().collect(UVCollectors.summarizing(U.KM, UVCollectors.MismatchPolicy.SKIP));
+		UVSummaryStatistics parallel = values.parallelStream().collect(UVCollectors.summarizing(U.KM, UVCollectors.MismatchPolicy.SKIP));
+		Assert.assertEquals(750, sequential.getCount());
+		Assert.assertEquals(sequential.getCount(), parallel.getCount());
+		Assert.assertEquals(sequential.getSkipped(), parallel.getSkipped());
+		Assert.assertEquals(sequential.getSum().value(), parallel.getSum().value(), 1e-9);
+		Assert.assertEquals(sequential.getMin(), parallel.getMin());
+		Assert.assertEquals(sequential.getMax(), parallel.getMax());
+
+		try {
+			UVCollectors.summarizing(null, UVCollectors.MismatchPolicy.SKIP);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// The quantity to keep would depend on how the stream is split
+		}
+	}
+
+	@Test
+	public void atomicStatUV() throws Exception {
+		AtomicStatUV tank = new AtomicStatUV(99, U.L, 0, 100);
+		Assert.assertEquals(1000, tank.add(1500, U.ML).value(), 1e-9);
+		Assert.assertEquals(100, tank.getUV().value(), 1e-9);
+		Assert.assertFalse(tank.tryAdd(1, U.ML));
+		Assert.assertTrue(tank.tryAdd(-1, U.L));
+		Assert.assertEquals(99000, tank.sub(100000, U.ML).value(), 1e-9);
+		Assert.assertEquals(0, tank.getUV().value(), 1e-9);
+
+		AtomicStatUV quota = new AtomicStatUV(0, U.L, 0, 1000);
+		Thread[] threads = new Thread[4];
+		double[] added = new double[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < 1000; i++) added[id] += quota.add(250, U.ML).convert(U.L).value();
+				} catch (UnitMismatchException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			threads[t].start();
+		}
+		double total = 0;
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			total += added[t];
+		}
+		Assert.assertEquals(1000, quota.getUV().value(), 1e-9);
+		Assert.assertEquals(1000, total, 1e-9);
+	}
+
+	@Test(expected = UnitMismatchException.class)
+	public void atomicStatMismatchUV() throws UnitMismatchException {
+		new AtomicStatUV(0, U.L).add(1, U.KG);
+	}
+
+	@Test
+	public void adderUV() throws Exception {
+		UVAdder distance = new UVAdder(U.KM, 15);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < 1000; i++) distance.add(i % 2 == 0 ? new UV(1, U.M) : new UV(0.001, U.KM));
+				} catch (UnitMismatchException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) t.join();
+		Assert.assertEquals(4, distance.sum().value(), 1e-9);
+		Assert.assertFalse(distance.isExceeded());
+
+		distance.add(20);
+		Assert.assertTrue(distance.isExceeded());
+		Assert.assertEquals(new UV(15, U.KM), distance.sumCapped());
+		Assert.assertEquals(24, distance.sumThenReset().value(), 1e-9);
+		Assert.assertEquals(new UV(0, U.KM), distance.sum());
+	}
+
+	@Test
+	public void histogramUV() throws UnitMismatchException {
+		UVHistogram a = new UVHistogram(U.MS, 0.001, 60000, 0.01);
+		UVHistogram b = new UVHistogram(U.MS, 0.001, 60000, 0.01);
+		for (int i = 1; i <= 1000; i++) {
+			if (i % 2 == 0) a.record(i, U.MS);
+			else b.record(new UV(i / 1000.0, U.S));
+		}
+		UVHistogram h = a.snapshot().merge(b);
+		Assert.assertEquals(500, a.getCount());
+		Assert.assertEquals(1000, h.getCount());
+		Assert.assertEquals(500, h.quantile(0.5).value(), 5.01);
+		Assert.assertEquals(990, h.quantile(0.99).value(), 9.91);
+		Assert.assertEquals(new UV(1, U.MS), h.quantile(0));
+		Assert.assertEquals(new UV(1000, U.MS), h.quantile(1));
+		Assert.assertEquals(new UV(500.5, U.MS), h.getMean());
+		Assert.assertEquals(U.S, h.quantileAuto(1).unit());
+	}
+
+	@Test
+	public void codecUV() throws Exception {
+		U carl = new U(U.M.div(U.KG), 0.025, "carl", "carl");
+		U odd = U.KM.div(U.H).pow(2).mul(U.POUND);
+		UnitTable table = new UnitTable();
+		ByteBuffer buf = ByteBuffer.allocate(1024);
+		UVCodec.putUV(buf, table, new UV(1.0 / 3, carl));
+		UVCodec.putUV(buf, table, new UV(Math.PI, odd));
+		UVCodec.putColumn(buf, table, UVArray.of(U.KM, 1, 2.5, -0.1));
+
+		ByteBuffer header = ByteBuffer.allocate(table.encodedSize());
+		table.writeTo(header);
+		Assert.assertFalse(header.hasRemaining());
+		header.flip();
+		UnitTable read = UnitTable.readFrom(header);
+		buf.flip();
+		UV a = UVCodec.getUV(buf, read);
+		UV b = UVCodec.getUV(buf, read);
+		UVArray c = UVCodec.getColumn(buf, read);
+		Assert.assertEquals(1.0 / 3, a.value(), 0);
+		Assert.assertEquals(carl.getLength(), a.unit().getLength(), 0);
+		Assert.assertEquals("carl", a.unit().toString());
+		Assert.assertEquals(odd.getLength(), b.unit().getLength(), 0);
+		Assert.assertEquals(odd.toString(), b.unit().toString());
+		Assert.assertSame(U.KM, c.unit());
+		Assert.assertArrayEquals(new double[] {1, 2.5, -0.1}, c.toArray(), 0);
+
+		File file = File.createTempFile("codec", ".uvc");
+		try {
+			double[] big = new double[20000];
+			for (int i = 0; i < big.length; i++) big[i] = i * 0.1;
+			try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				UVCodec.write(ch, new UVArray(big, 1, 19999, U.MS), UVArray.of(carl, 7), UVArray.of(U.KG));
+			}
+			UVArray[] columns;
+			try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				columns = UVCodec.read(ch);
+			}
+			Assert.assertEquals(3, columns.length);
+			Assert.assertSame(U.MS, columns[0].unit());
+			Assert.assertArrayEquals(Arrays.copyOfRange(big, 1, 20000), columns[0].toArray(), 0);
+			Assert.assertEquals(carl.getLength(), columns[1].unit().getLength(), 0);
+			Assert.assertEquals(new UV(7, carl), columns[1].get(0));
+			Assert.assertEquals(0, columns[2].length());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void columnFile() throws Exception {
+		File file = File.createTempFile("column", ".uvc");
+		try {
+			try (UVColumnFile f = UVColumnFile.create(file.toPath(), U.KM, 1000)) {
+				double[] values = new double[2500];
+				for (int i = 0; i < values.length; i++) values[i] = i;
+				f.append(values);
+				Assert.assertEquals(new UV(2499, U.KM), f.max());
+				f.append(UVArray.of(U.M, 5000, -1000));
+				f.append(new UV(1, U.MILE));
+				Assert.assertEquals(2503, f.length());
+				Assert.assertEquals(new UV(-1, U.KM), f.min());
+				Assert.assertEquals(2499 * 2500 / 2 + 4 + U.MILE.getLength() / 1000, f.sum().value(), 1e-9);
+				Assert.assertEquals(5, f.getValue(2500), 0);
+			}
+			try (UVColumnFile f = UVColumnFile.open(file.toPath(), false, 1000)) {
+				Assert.assertSame(U.KM, f.unit());
+				Assert.assertEquals(2503, f.length());
+				double[] meters = new double[3];
+				f.convert(999, meters, 0, 3, U.M);
+				Assert.assertArrayEquals(new double[] {999000, 1000000, 1001000}, meters, 1e-9);
+				Assert.assertEquals(new UV(1500, U.KM), f.read(1000, 1001).mean());
+			}
+			try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				Assert.assertEquals(2503, UVCodec.read(ch)[0].length());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void csvReader() throws Exception {
+		U kmh = U.parse("km/h");
+		StringBuilder sb = new StringBuilder("speed,name,mass\n");
+		for (int i = 0; i < 1000; i++) {
+			sb.append(i % 2 == 0 ? i + " km/h" : i / 3.6 + " m/s").append(",row ").append(i).append(",\"").append(i).append(" lb\"\r\n");
+		}
+		sb.append("\n 1.5e3 , x ,  2 kg\n-0.25,,\nNaN mile/h");
+		byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		UVCsvReader reader = new UVCsvReader(',', true, new U[] {kmh, null, U.KG}, 64);
+		UVCsvReader.Result r = reader.read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+		Assert.assertEquals(1003, r.rows());
+		Assert.assertEquals(bytes.length, r.bytes());
+		Assert.assertNull(r.column(1));
+		Assert.assertSame(kmh, r.column(0).unit());
+		Assert.assertEquals(999, r.column(0).get(999).value(), 1e-9);
+		Assert.assertEquals(999 * U.POUND.getLength() / U.KG.getLength(), r.column(2).get(999).value(), 1e-9);
+		Assert.assertEquals(1500, r.column(0).get(1000).value(), 0);
+		Assert.assertEquals(2, r.column(2).get(1000).value(), 0);
+		Assert.assertEquals(-0.25, r.column(0).get(1001).value(), 0);
+		Assert.assertTrue(Double.isNaN(r.column(2).get(1001).value()));
+		Assert.assertTrue(Double.isNaN(r.column(0).get(1002).value()));
+
+		File file = File.createTempFile("units", ".csv");
+		try {
+			Files.write(file.toPath(), bytes);
+			try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				UVCsvReader.Result p = reader.read(ch, 7);
+				Assert.assertEquals(r.rows(), p.rows());
+				Assert.assertArrayEquals(r.column(0).toArray(), p.column(0).toArray(), 0);
+				Assert.assertArrayEquals(r.column(2).toArray(), p.column(2).toArray(), 0);
+			}
+		} finally {
+			file.delete();
+		}
+
+		Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			double d = Double.longBitsToDouble(random.nextLong());
+			if (Double.isInfinite(d)) continue;
+			String text = i % 2 == 0 ? Double.toString(d) : String.format(Locale.ROOT, "%.6f", random.nextDouble() * 1000);
+			double parsed = new UVCsvReader('\t', false, U.M).read(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)))).column(0).get(0).value();
+			Assert.assertEquals(text, Double.parseDouble(text), parsed, 0);
+		}
+
+		UVArray temperatures = new UVCsvReader(';', false, U.KELVIN).read(Channels.newChannel(new ByteArrayInputStream("20 \u00B0C\n68 \u00B0F\n".getBytes(StandardCharsets.UTF_8)))).column(0);
+		Assert.assertArrayEquals(new double[] {293.15, 293.15}, temperatures.toArray(), 1e-9);
+
+		try {
+			new UVCsvReader(',', false, U.KG).read(Channels.newChannel(new ByteArrayInputStream("1 kg\n2 km\n".getBytes(StandardCharsets.UTF_8))));
+			Assert.fail();
+		} catch (ParseException e) {
+			Assert.assertEquals(7, e.getErrorOffset());
+		}
+	}
+
+	@Test
+	public void offsetUV() throws Exception {
+		Assert.assertEquals(273.15, new UV(0, U.CELSIUS).convertAbsolute(U.KELVIN).value(), 1e-9);
+		Assert.assertEquals(212, new UV(100, U.CELSIUS).convertAbsolute(U.FAHRENHEIT).value(), 1e-9);
+		Assert.assertEquals(-40, new UV(-40, U.FAHRENHEIT).convertAbsolute(U.CELSIUS).value(), 1e-9);
+		Assert.assertEquals(0, new UV(-459.67, U.FAHRENHEIT).convertAbsolute(U.KELVIN).value(), 1e-9);
+		Assert.assertEquals(new UV(1.8, U.FAHRENHEIT), new UV(1, U.CELSIUS).convert(U.FAHRENHEIT)); // A difference
+		Assert.assertEquals(new UV(3, U.KM), new UV(3000, U.M).convertAbsolute(U.KM));
+
+		Converter c = U.FAHRENHEIT.converterTo(U.CELSIUS);
+		Assert.assertEquals(5.0 / 9, c.factor(), 1e-15);
+		Assert.assertEquals(-160.0 / 9, c.offset(), 1e-12);
+		double[] values = {32, 212, 98.6};
+		c.applyAbsolute(values, values);
+		Assert.assertArrayEquals(new double[] {0, 100, 37}, values, 1e-9);
+		Assert.assertArrayEquals(new double[] {0, 100}, UVArray.of(U.KELVIN, 273.15, 373.15).convertAbsolute(U.CELSIUS).toArray(), 1e-9);
+
+		// Offsets only apply to scales, not to compound units
+		Assert.assertEquals(273.15, U.CELSIUS.getOffset(), 0);
+		Assert.assertEquals(0, U.CELSIUS.div(U.S).getOffset(), 0);
+		Assert.assertEquals(0, U.CELSIUS.pow(2).getOffset(), 0);
+		Assert.assertSame(U.CELSIUS, U.CELSIUS.pow(1));
+		Assert.assertEquals(new UV(1, U.KELVIN.div(U.S)), new UV(1, U.CELSIUS.div(U.S)).convertAbsolute(U.KELVIN.div(U.S)));
+
+		U rankine = new U(U.KELVIN, 5.0 / 9, "\u00B0R", "rankine");
+		Assert.assertEquals(491.67, new UV(0, U.CELSIUS).convertAbsolute(rankine).value(), 1e-9);
+		Assert.assertSame(U.FAHRENHEIT, U.parse("\u00B0F"));
+		try {
+			new U(U.M.div(U.S), 1, 1, "x", "x");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void kernels() throws Exception {
+		// The java17 Maven profile also runs this against the multi-release jar with the Vector API, and sets this property
+		if (Boolean.getBoolean("io.guldbrand.unit.expectVectorized")) Assert.assertTrue(Kernels.VECTORIZED);
+
+		Random random = new Random(2);
+		for (int n : new int[] {0, 1, 31, 32, 33, 1000, 1027}) {
+			double[] x = new double[n + 2];
+			double[] y = new double[n + 1];
+			for (int i = 0; i < x.length; i++) x[i] = random.nextDouble() * 200 - 100;
+			for (int i = 0; i < y.length; i++) y[i] = random.nextDouble() + 0.5;
+			double f = random.nextDouble() * 3;
+			double offset = random.nextDouble() * 500;
+			double[][] results = new double[6][n];
+			Kernels.scale(x, 2, results[0], 0, n, f);
+			Kernels.affine(x, 2, results[1], 0, n, f, offset);
+			Kernels.add(x, 2, y, 1, results[2], 0, n, f);
+			Kernels.sub(x, 2, y, 1, results[3], 0, n, f);
+			Kernels.mul(x, 2, y, 1, results[4], 0, n, f);
+			Kernels.div(x, 2, y, 1, results[5], 0, n, f);
+			for (int i = 0; i < n; i++) {
+				// Bit for bit, whichever version of Kernels is loaded
+				Assert.assertEquals(x[2 + i] * f, results[0][i], 0);
+				Assert.assertEquals(x[2 + i] * f + offset, results[1][i], 0);
+				Assert.assertEquals(x[2 + i] + y[1 + i] * f, results[2][i], 0);
+				Assert.assertEquals(x[2 + i] - y[1 + i] * f, results[3][i], 0);
+				Assert.assertEquals(x[2 + i] * y[1 + i] * f, results[4][i], 0);
+				Assert.assertEquals(x[2 + i] / y[1 + i] * f, results[5][i], 0);
+			}
+
+			UVArray celsius = new UVArray(x, 2, n, U.CELSIUS);
+			Converter c = U.CELSIUS.converterTo(U.KELVIN);
+			double[] kelvin = celsius.convertAbsolute(U.KELVIN).toArray();
+			for (int i = 0; i < n; i++) Assert.assertEquals(x[2 + i] * c.factor() + c.offset(), kelvin[i], 0);
+		}
+	}
+
+	@Test
+	public void conversionMatrix() throws Exception {
+		ConversionMatrix m = UnitRegistry.DEFAULT.conversions();
+		int km = m.id(U.KM);
+		int mile = m.id(U.MILE);
+		Assert.assertSame(U.KM, m.unit(km));
+		Assert.assertEquals(U.MILE.converterTo(U.KM).factor(), m.factor(mile, km), 0);
+		Assert.assertTrue(Double.isNaN(m.factor(km, m.id(U.KG))));
+		Assert.assertEquals(-1, m.id(U.KM.div(U.H)));
+		Assert.assertEquals(3.6, m.factor(U.M.div(U.S), U.KM.div(U.H)), 1e-12); // Not registered, falls back to the cache
+		try {
+			m.factor(U.KM, U.KG);
+			Assert.fail();
+		} catch (UnitMismatchException e) {
+			// Expected
+		}
+		double[] values = {1, 2.5};
+		m.convert(mile, values, 0, km, values, 0, 2);
+		Assert.assertArrayEquals(new double[] {U.MILE.getLength() / 1000, 2.5 * U.MILE.getLength() / 1000}, values, 1e-9);
+
+		// The table is built on first use, then grows with registrations, keeping ids and factors
+		UnitRegistry registry = new UnitRegistry();
+		registry.registerAll(UnitRegistry.DEFAULT.getAll());
+		ConversionMatrix r = registry.conversions();
+		Assert.assertSame(r, registry.conversions());
+		for (int p = 2; p <= 200; p++) registry.register(U.M.pow(p));
+		Assert.assertEquals(registry.size(), r.size());
+		List<U> all = registry.getAll();
+		for (int i = 0; i < all.size(); i++) {
+			Assert.assertEquals(i, r.id(all.get(i)));
+			for (int j = 0; j < all.size(); j++) {
+				Converter c = ConversionCache.DEFAULT.find(all.get(i), all.get(j));
+				Assert.assertEquals(c == null ? Double.NaN : c.factor(), r.factor(i, j), 0);
+			}
+		}
+		Assert.assertArrayEquals(UVArray.of(U.FOOT, 1, 2).convert(U.M).toArray(), r.convert(UVArray.of(U.FOOT, 1, 2), U.M).toArray(), 0);
+	}
+
 }